@@ -54,6 +54,8 @@ public class BranchCoverageAction extends Recorder implements SimpleBuildStep {
     private String jacocoCounterType;
     private Map<String, String> scmVars;
     private List<ReportMetaData> reportMetaDataList;
+    private String reportPaths;
+    private String reportManifest;
 
     @DataBoundConstructor
     public BranchCoverageAction() {
@@ -73,6 +75,14 @@ public class BranchCoverageAction extends Recorder implements SimpleBuildStep {
         return reportMetaDataList;
     }
 
+    public String getReportPaths() {
+        return reportPaths;
+    }
+
+    public String getReportManifest() {
+        return reportManifest;
+    }
+
     @DataBoundSetter
     public void setJacocoCounterType(String jacocoCounterType) {
         this.jacocoCounterType = jacocoCounterType;
@@ -88,6 +98,16 @@ public class BranchCoverageAction extends Recorder implements SimpleBuildStep {
         this.reportMetaDataList = reportMetaDataList;
     }
 
+    @DataBoundSetter
+    public void setReportPaths(String reportPaths) {
+        this.reportPaths = reportPaths;
+    }
+
+    @DataBoundSetter
+    public void setReportManifest(String reportManifest) {
+        this.reportManifest = reportManifest;
+    }
+
 
     @SuppressWarnings("NullableProblems")
     @Override
@@ -98,8 +118,10 @@ public class BranchCoverageAction extends Recorder implements SimpleBuildStep {
         final PrintStream buildLog = listener.getLogger();
         final String gitUrl = PrIdAndUrlUtils.getGitUrl(scmVars, build, listener);
         final String gitBranch = PrIdAndUrlUtils.getGitBranch(scmVars, build, listener);
+        final String gitCommit = PrIdAndUrlUtils.getGitCommit(scmVars, build, listener);
         buildLog.println("Git URL: " + gitUrl);
         buildLog.println("Git Branch: " + gitBranch);
+        buildLog.println("Git Commit: " + gitCommit);
 
         CoverageMetaData coverageMetaData = new CoverageMetaData(gitUrl, gitBranch, reportMetaDataList);
         buildLog.println("CoverageMetaData: " + coverageMetaData);
@@ -108,13 +130,19 @@ public class BranchCoverageAction extends Recorder implements SimpleBuildStep {
         final String jacocoCounterType = this.jacocoCounterType;
 
         buildLog.println("branch coverage....");
-        Map<String, ReportData> branchCoverageData = ServiceRegistry.getCoverageRepository(disableSimpleCov, jacocoCounterType, coverageMetaData.getReportMetaDataList())
-                .get(workspace);
+        Map<String, ReportData> branchCoverageData = ServiceRegistry.getCoverageRepository(disableSimpleCov, jacocoCounterType, coverageMetaData.getReportMetaDataList(),
+                reportPaths, reportManifest, listener).get(workspace);
         buildLog.println("coverage: " + branchCoverageData);
         for(String label: branchCoverageData.keySet()) {
             buildLog.println(label + ": " + Percent.toString(branchCoverageData.get(label).getRate()));
+            for (Map.Entry<CoverageCounter, ReportData> counter : branchCoverageData.get(label).getCounters().entrySet()) {
+                buildLog.println("    " + counter.getKey() + ": " + Percent.toWholeNoSignString(counter.getValue().getRate()));
+            }
+        }
+        if (!ServiceRegistry.getBranchCoverageStore().put(coverageMetaData, branchCoverageData, gitCommit,
+                build.getStartTimeInMillis(), build.getNumber())) {
+            buildLog.println("Coverage of newer build of " + gitBranch + " is already recorded, keep it as branch coverage");
         }
-        Configuration.setBranchCoverage(coverageMetaData, branchCoverageData);
     }
 
     @Override
@@ -0,0 +1,228 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming JSON export and import of {@link BranchCoverageStore} to move branch coverage between Jenkins instances.
+ * Entries are written and read one by one, so memory doesn't depend on size of store.
+ * <pre>
+ * {"formatVersion": 1, "entries": [
+ *   {"gitUrl": "...", "branch": "master", "version": 1600000000000,
+ *    "labels": [{"label": "backend", "includes": "...", "excludes": null}],
+ *    "coverage": {"repo": {"covered": 1, "total": 2, "counters": {"LINE": [1, 2]}}}}
+ * ]}
+ * </pre>
+ * Import keeps entry which has coverage of newer build and writes files once per {@link #FLUSH_EVERY} entries.
+ */
+final class BranchCoverageJson {
+
+    static final int FORMAT_VERSION = 1;
+    static final int FLUSH_EVERY = 1000;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private BranchCoverageJson() {
+        throw new UnsupportedOperationException("Util class!");
+    }
+
+    /**
+     * @return count of exported entries
+     */
+    static int write(BranchCoverageStore store, OutputStream outputStream) throws IOException {
+        final int[] count = new int[1];
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream, JsonEncoding.UTF8)) {
+            generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            generator.writeStartObject();
+            generator.writeNumberField("formatVersion", FORMAT_VERSION);
+            generator.writeArrayFieldStart("entries");
+            store.forEachEntry((coverageMetaData, coverage, version) -> {
+                writeEntry(generator, coverageMetaData, coverage, version);
+                count[0]++;
+            });
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return count[0];
+    }
+
+    private static void writeEntry(JsonGenerator generator, CoverageMetaData coverageMetaData,
+                                   Map<String, ReportData> coverage, long version) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("gitUrl", coverageMetaData.getGitUrl());
+        generator.writeStringField("branch", coverageMetaData.getGitBranch());
+        generator.writeNumberField("version", version);
+        if (coverageMetaData.getReportMetaDataList() != null) {
+            generator.writeArrayFieldStart("labels");
+            for (ReportMetaData reportMetaData : coverageMetaData.getReportMetaDataList()) {
+                generator.writeStartObject();
+                generator.writeStringField("label", reportMetaData.getLabel());
+                generator.writeStringField("includes", reportMetaData.getIncludes());
+                generator.writeStringField("excludes", reportMetaData.getExcludes());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeObjectFieldStart("coverage");
+        for (Map.Entry<String, ReportData> label : coverage.entrySet()) {
+            generator.writeObjectFieldStart(label.getKey());
+            generator.writeNumberField("covered", label.getValue().getCovered());
+            generator.writeNumberField("total", label.getValue().getTotal());
+            final Map<CoverageCounter, ReportData> counters = label.getValue().getCounters();
+            if (!counters.isEmpty()) {
+                generator.writeObjectFieldStart("counters");
+                for (Map.Entry<CoverageCounter, ReportData> counter : counters.entrySet()) {
+                    generator.writeArrayFieldStart(counter.getKey().name());
+                    generator.writeNumber(counter.getValue().getCovered());
+                    generator.writeNumber(counter.getValue().getTotal());
+                    generator.writeEndArray();
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /**
+     * @return count of imported entries, entries older than stored ones are not counted
+     */
+    static int read(BranchCoverageStore store, InputStream inputStream) throws IOException {
+        int imported = 0;
+        int pending = 0;
+        try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+            parser.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("formatVersion".equals(field)) {
+                    if (parser.getIntValue() > FORMAT_VERSION) {
+                        throw new JsonParseException(parser, "Unsupported branch coverage format version: " + parser.getIntValue());
+                    }
+                } else if ("entries".equals(field)) {
+                    expect(parser, value, JsonToken.START_ARRAY);
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        if (readEntry(store, parser)) imported++;
+                        if (++pending == FLUSH_EVERY) {
+                            store.releaseImported();
+                            pending = 0;
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } finally {
+            store.releaseImported();
+        }
+        return imported;
+    }
+
+    private static boolean readEntry(BranchCoverageStore store, JsonParser parser) throws IOException {
+        String gitUrl = null;
+        String branch = null;
+        long version = 0;
+        List<ReportMetaData> labels = null;
+        final Map<String, ReportData> coverage = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("gitUrl".equals(field)) {
+                gitUrl = parser.getValueAsString();
+            } else if ("branch".equals(field)) {
+                branch = parser.getValueAsString();
+            } else if ("version".equals(field)) {
+                version = parser.getLongValue();
+            } else if ("labels".equals(field)) {
+                expect(parser, value, JsonToken.START_ARRAY);
+                labels = new ArrayList<>();
+                while (parser.nextToken() == JsonToken.START_OBJECT) labels.add(readLabel(parser));
+            } else if ("coverage".equals(field)) {
+                expect(parser, value, JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String label = parser.getCurrentName();
+                    expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+                    coverage.put(label, readReportData(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (gitUrl == null || branch == null) {
+            throw new JsonParseException(parser, "Branch coverage entry without gitUrl or branch");
+        }
+        return store.importEntry(new CoverageMetaData(gitUrl, branch, labels), coverage, version);
+    }
+
+    private static ReportMetaData readLabel(JsonParser parser) throws IOException {
+        final ReportMetaData reportMetaData = new ReportMetaData();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("label".equals(field)) reportMetaData.setLabel(parser.getValueAsString());
+            else if ("includes".equals(field)) reportMetaData.setIncludes(parser.getValueAsString());
+            else if ("excludes".equals(field)) reportMetaData.setExcludes(parser.getValueAsString());
+            else parser.skipChildren();
+        }
+        return reportMetaData;
+    }
+
+    private static ReportData readReportData(JsonParser parser) throws IOException {
+        int covered = 0;
+        int total = 0;
+        final Map<CoverageCounter, int[]> counters = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("covered".equals(field)) {
+                covered = parser.getIntValue();
+            } else if ("total".equals(field)) {
+                total = parser.getIntValue();
+            } else if ("counters".equals(field)) {
+                expect(parser, value, JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String counter = parser.getCurrentName();
+                    expect(parser, parser.nextToken(), JsonToken.START_ARRAY);
+                    expect(parser, parser.nextToken(), JsonToken.VALUE_NUMBER_INT);
+                    final int counterCovered = parser.getIntValue();
+                    expect(parser, parser.nextToken(), JsonToken.VALUE_NUMBER_INT);
+                    final int counterTotal = parser.getIntValue();
+                    expect(parser, parser.nextToken(), JsonToken.END_ARRAY);
+                    try {
+                        counters.put(CoverageCounter.valueOf(counter), new int[]{counterCovered, counterTotal});
+                    } catch (IllegalArgumentException e) {
+                        // counter of newer version, skip it
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        final ReportData reportData = new ReportData(covered, total);
+        for (Map.Entry<CoverageCounter, int[]> counter : counters.entrySet()) {
+            reportData.setCounter(counter.getKey(), counter.getValue()[0], counter.getValue()[1]);
+        }
+        return reportData;
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + actual);
+        }
+    }
+
+}
@@ -0,0 +1,1138 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import hudson.XmlFile;
+import hudson.init.Terminator;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Branch coverage recorded by {@link BranchCoverageAction}, sharded per repository.
+ * <p>
+ * Each repository has own small file in {@link #DIRECTORY_NAME} under <code>JENKINS_HOME</code>,
+ * so branch build writes only file of own repository instead of whole global configuration.
+ * Repository key is <code>owner/repo</code> from {@link GitUtils#getUserRepo(String)} in lower case,
+ * or Git URL as is if it's not GitHub URL.
+ * <p>
+ * Each repository has index branch to label to coverage of last build, so target coverage is found by
+ * {@link #find(CoverageMetaData)} with any Git URL of repository and any order of labels. When labels
+ * were changed since target branch build, only changed labels are missed.
+ * <p>
+ * Coverage is also recorded by commit SHA, last {@link #DEFAULT_MAX_COMMITS} commits per repository, so pull request
+ * could be compared with exact merge base commit by {@link #findByCommits(CoverageMetaData, List)}.
+ * <p>
+ * Last {@link #DEFAULT_HISTORY_SIZE} snapshots of each label of branch are kept as {@link CoverageHistory}
+ * for trend and smoothed baseline, history is dropped with last entry of branch and starts again
+ * when label definition is changed.
+ * <p>
+ * File of repository is read on first lookup of this repository, so Jenkins startup doesn't depend
+ * on how many branches have ever recorded coverage.
+ * <p>
+ * Build only updates memory and returns. Files are written by one background writer which waits
+ * {@link #getFlushWindowMillis()} after first update, so burst of updates is written by one flush.
+ * Pending updates are flushed on Jenkins shutdown. With zero window file is written by build thread.
+ * <p>
+ * Store is bounded: entry not written longer than TTL expires, and when repository has more than
+ * {@link #getMaxEntries()} entries least recently used ones are evicted. Entries of protected branches
+ * like <code>master</code> or <code>release/*</code> are never removed.
+ * <p>
+ * Memory is bounded too: repository not used for {@link #DEFAULT_IDLE_MILLIS} is unloaded, and when loaded
+ * repositories have more than {@link #getMaxLoadedEntries()} entries least recently used repositories are
+ * unloaded. Repository is unloaded only when its updates are written. Periodic sweep applies TTL and limit
+ * to all repository files, including ones which are not used since Jenkins start.
+ */
+public class BranchCoverageStore {
+
+    static final String DIRECTORY_NAME = "github-pr-coverage-status";
+    static final long DEFAULT_FLUSH_WINDOW_MILLIS = 1000;
+    static final int DEFAULT_MAX_ENTRIES = 1000;
+    static final String DEFAULT_PROTECTED_BRANCHES = "master, main, release/*";
+    static final String REPO_LABEL = "repo";
+    static final int DEFAULT_MAX_COMMITS = 500;
+    static final int DEFAULT_HISTORY_SIZE = 30;
+    static final int DEFAULT_MAX_LOADED_ENTRIES = 100000;
+    static final long DEFAULT_IDLE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    static final long SWEEP_PERIOD_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final Logger LOGGER = Logger.getLogger(BranchCoverageStore.class.getName());
+    private static final String SHARD_SUFFIX = ".xml";
+
+    private static BranchCoverageStore instance;
+
+    private final File directory;
+    // loaded shards, empty one for repository without file
+    private final Map<String, Shard> shards = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "GitHub PR Coverage Status branch coverage writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<String> dirtyShards = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicInteger pendingUpdates = new AtomicInteger();
+    private volatile long flushWindowMillis = DEFAULT_FLUSH_WINDOW_MILLIS;
+
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+    private volatile long ttlMillis;
+    private volatile int maxCommits = DEFAULT_MAX_COMMITS;
+    private volatile int historySize = DEFAULT_HISTORY_SIZE;
+    private volatile Pattern protectedBranches = toPattern(DEFAULT_PROTECTED_BRANCHES);
+    private volatile int maxLoadedEntries = DEFAULT_MAX_LOADED_ENTRIES;
+    private volatile long idleMillis = DEFAULT_IDLE_MILLIS;
+    private Clock clock = Clock.systemUTC();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong staleWrites = new AtomicLong();
+    private final AtomicLong unloads = new AtomicLong();
+    // found by last sweep, -1 before first one
+    private volatile long storedEntries = -1;
+    private volatile int storedRepositories = -1;
+
+    // metrics, changed by writer only
+    private volatile long flushes;
+    private volatile long shardWrites;
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+    private volatile long totalFlushMillis;
+
+    BranchCoverageStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Store in <code>JENKINS_HOME</code>, files are not read here. On first use coverage kept by previous versions
+     * in global configuration is moved to it
+     */
+    public static synchronized BranchCoverageStore getInstance() {
+        if (instance == null) {
+            final BranchCoverageStore store = new BranchCoverageStore(new File(Jenkins.getInstance().getRootDir(), DIRECTORY_NAME));
+            store.setFlushWindowMillis(Configuration.DESCRIPTOR.getBranchCoverageFlushWindow());
+            store.setLimits(Configuration.DESCRIPTOR.getBranchCoverageMaxEntries(),
+                    TimeUnit.DAYS.toMillis(Configuration.DESCRIPTOR.getBranchCoverageTtlDays()),
+                    Configuration.DESCRIPTOR.getBranchCoverageProtectedBranches());
+            store.setMaxLoadedEntries(Configuration.DESCRIPTOR.getBranchCoverageMaxLoadedEntries());
+            Configuration.DESCRIPTOR.migrateBranchCoverage(store);
+            store.startSweep();
+            instance = store;
+        }
+        return instance;
+    }
+
+    /**
+     * Write pending updates before Jenkins is stopped
+     */
+    @Terminator
+    public static void flushOnShutdown() {
+        final BranchCoverageStore store;
+        synchronized (BranchCoverageStore.class) {
+            store = instance;
+        }
+        if (store != null) store.close();
+    }
+
+    static String getRepoKey(String gitUrl) {
+        try {
+            return GitUtils.getUserRepo(gitUrl).toLowerCase(Locale.ENGLISH);
+        } catch (IllegalStateException e) {
+            return String.valueOf(gitUrl);
+        }
+    }
+
+    /**
+     * Comma or new line separated branch globs, <code>*</code> doesn't match <code>/</code>
+     * and <code>**</code> matches anything
+     */
+    static Pattern toPattern(String globs) {
+        final StringBuilder regex = new StringBuilder();
+        if (globs != null) {
+            for (String glob : globs.split("[,\\n]")) {
+                glob = glob.trim();
+                if (glob.isEmpty()) continue;
+                if (regex.length() > 0) regex.append('|');
+                for (int i = 0; i < glob.length(); i++) {
+                    final char c = glob.charAt(i);
+                    if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        regex.append(".*");
+                        i++;
+                    } else if (c == '*') {
+                        regex.append("[^/]*");
+                    } else if (c == '?') {
+                        regex.append("[^/]");
+                    } else {
+                        regex.append(Pattern.quote(String.valueOf(c)));
+                    }
+                }
+            }
+        }
+        return regex.length() > 0 ? Pattern.compile(regex.toString()) : null;
+    }
+
+    /**
+     * @return coverage or <code>null</code> if not recorded or expired
+     */
+    public Map<String, ReportData> get(CoverageMetaData coverageMetaData) {
+        return get(getShard(getRepoKey(coverageMetaData.getGitUrl())), coverageMetaData);
+    }
+
+    private Map<String, ReportData> get(Shard shard, CoverageMetaData coverageMetaData) {
+        final Map<String, ReportData> coverage = shard.entries.get(coverageMetaData);
+        if (coverage == null) return null;
+
+        final long now = clock.millis();
+        if (isExpired(shard, coverageMetaData, now)) {
+            synchronized (shard) {
+                if (shard.remove(coverageMetaData)) expirations.incrementAndGet();
+                // under lock, so repository is not unloaded before it's written
+                dirtyShards.add(shard.repo);
+            }
+            return null;
+        }
+        shard.used.put(coverageMetaData, now);
+        return coverage;
+    }
+
+    /**
+     * Lookup by index, each label is taken from last build of branch with same label definition
+     *
+     * @return coverage of found labels or <code>null</code> if branch not recorded
+     */
+    public Map<String, ReportData> find(CoverageMetaData coverageMetaData) {
+        final Shard shard = getShard(getRepoKey(coverageMetaData.getGitUrl()));
+        final Map<String, LabelCoverage> labels = shard.getIndex().get(coverageMetaData.getGitBranch());
+        if (labels == null) return null;
+
+        final Map<String, ReportData> coverage = new HashMap<>();
+        addLabel(shard, labels.get(REPO_LABEL), null, coverage);
+        if (coverageMetaData.getReportMetaDataList() != null) {
+            for (ReportMetaData reportMetaData : coverageMetaData.getReportMetaDataList()) {
+                addLabel(shard, labels.get(reportMetaData.getLabel()), reportMetaData, coverage);
+            }
+        }
+        return coverage;
+    }
+
+    private void addLabel(Shard shard, LabelCoverage labelCoverage, ReportMetaData reportMetaData, Map<String, ReportData> coverage) {
+        if (labelCoverage == null) return;
+        if (reportMetaData != null && !reportMetaData.equals(labelCoverage.reportMetaData)) return;
+        // same entry as get, so expiration and last use are checked
+        final Map<String, ReportData> entry = get(shard, labelCoverage.source);
+        if (entry != null && entry.containsKey(labelCoverage.label)) {
+            coverage.put(labelCoverage.label, entry.get(labelCoverage.label));
+        }
+    }
+
+    /**
+     * @param commits - merge base and its ancestors, nearest first
+     * @return coverage of labels with same definition from first recorded commit or <code>null</code> if none
+     */
+    public CommitCoverage findByCommits(CoverageMetaData coverageMetaData, List<String> commits) {
+        final Shard shard = getShard(getRepoKey(coverageMetaData.getGitUrl()));
+        for (String commit : commits) {
+            final CommitCoverage recorded;
+            synchronized (shard) {
+                recorded = shard.commits.get(commit);
+            }
+            if (recorded == null) continue;
+
+            final Map<String, ReportMetaData> definitions = getDefinitions(recorded.coverageMetaData);
+            final Map<String, ReportData> coverage = new HashMap<>();
+            if (recorded.coverage.containsKey(REPO_LABEL)) coverage.put(REPO_LABEL, recorded.coverage.get(REPO_LABEL));
+            if (coverageMetaData.getReportMetaDataList() != null) {
+                for (ReportMetaData reportMetaData : coverageMetaData.getReportMetaDataList()) {
+                    if (recorded.coverage.containsKey(reportMetaData.getLabel())
+                            && reportMetaData.equals(definitions.get(reportMetaData.getLabel()))) {
+                        coverage.put(reportMetaData.getLabel(), recorded.coverage.get(reportMetaData.getLabel()));
+                    }
+                }
+            }
+            return new CommitCoverage(commit, recorded.coverageMetaData, coverage);
+        }
+        return null;
+    }
+
+    private static Map<String, ReportMetaData> getDefinitions(CoverageMetaData coverageMetaData) {
+        final Map<String, ReportMetaData> definitions = new HashMap<>();
+        if (coverageMetaData.getReportMetaDataList() != null) {
+            for (ReportMetaData reportMetaData : coverageMetaData.getReportMetaDataList()) {
+                definitions.put(reportMetaData.getLabel(), reportMetaData);
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * Candidates to show when target branch is not found, instead of whole repository
+     *
+     * @return up to limit recorded branches of repository ordered by edit distance to branch
+     */
+    public List<String> getClosestBranches(String gitUrl, final String branch, int limit) {
+        final List<String> branches = new ArrayList<>(getShard(getRepoKey(gitUrl)).getIndex().keySet());
+        final Map<String, Integer> distances = new HashMap<>();
+        for (String candidate : branches) {
+            distances.put(candidate, StringUtils.getLevenshteinDistance(String.valueOf(branch), candidate));
+        }
+        branches.sort(Comparator.<String>comparingInt(distances::get).thenComparing(Comparator.<String>naturalOrder()));
+        return branches.size() > limit ? branches.subList(0, limit) : branches;
+    }
+
+    /**
+     * @return all coverage recorded for repository of Git URL
+     */
+    public Map<CoverageMetaData, Map<String, ReportData>> getRepository(String gitUrl) {
+        return Collections.unmodifiableMap(getShard(getRepoKey(gitUrl)).entries);
+    }
+
+    public void put(CoverageMetaData coverageMetaData, Map<String, ReportData> coverage) {
+        put(coverageMetaData, coverage, null, clock.millis());
+    }
+
+    /**
+     * Last writer wins by version, not by order of calls: build which finished later but started earlier
+     * than build already recorded for same entry doesn't overwrite it. Commit coverage is recorded anyway.
+     *
+     * @param commit  - SHA of built commit, could be <code>null</code>
+     * @param version - start time of build
+     * @return <code>false</code> if entry has coverage of newer build
+     */
+    public boolean put(CoverageMetaData coverageMetaData, final Map<String, ReportData> coverage, String commit, final long version) {
+        return put(coverageMetaData, coverage, commit, version, 0);
+    }
+
+    /**
+     * @param buildNumber - number of build to keep in history
+     * @see #put(CoverageMetaData, Map, String, long)
+     */
+    public boolean put(CoverageMetaData coverageMetaData, final Map<String, ReportData> coverage, String commit,
+                       final long version, int buildNumber) {
+        final boolean accepted = record(coverageMetaData, coverage, commit, version, buildNumber);
+        scheduleFlush();
+        return accepted;
+    }
+
+    /**
+     * Add entry exported by {@link #forEachEntry(EntryVisitor)}, it's not written until {@link #releaseImported()}
+     * so bulk import doesn't write file per entry. Imported entry is not build, so it has no history and commit.
+     *
+     * @return <code>false</code> if entry has coverage of newer build
+     */
+    boolean importEntry(CoverageMetaData coverageMetaData, Map<String, ReportData> coverage, long version) {
+        final String repoKey = getRepoKey(coverageMetaData.getGitUrl());
+        while (true) {
+            final Shard shard = getBackgroundShard(repoKey);
+            final long now = clock.millis();
+            if (!shard.compareAndSet(coverageMetaData, coverage, version, now)) {
+                // repository is not changed
+                staleWrites.incrementAndGet();
+                return false;
+            }
+            synchronized (shard) {
+                // repository unloaded by other import is read again
+                if (shards.get(repoKey) != shard) continue;
+
+                // evicted after compute
+                if (shard.entries.containsKey(coverageMetaData)) {
+                    shard.touch(coverageMetaData, now);
+                    evict(shard, now);
+                }
+                pendingUpdates.incrementAndGet();
+                dirtyShards.add(repoKey);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Write imported entries and unload repositories which were loaded by import or sweep and not used
+     * by builds since, so import of many repositories doesn't keep all of them in memory
+     */
+    synchronized void releaseImported() {
+        flush();
+        for (Map.Entry<String, Shard> loaded : shards.entrySet()) {
+            final Shard shard = loaded.getValue();
+            synchronized (shard) {
+                // not written one is kept till next flush
+                if (!shard.background || dirtyShards.contains(loaded.getKey())) continue;
+                shards.remove(loaded.getKey(), shard);
+            }
+        }
+    }
+
+    private boolean record(CoverageMetaData coverageMetaData, final Map<String, ReportData> coverage, String commit,
+                           final long version, int buildNumber) {
+        final String repoKey = getRepoKey(coverageMetaData.getGitUrl());
+        while (true) {
+            final Shard shard = getShard(repoKey);
+            final long now = clock.millis();
+            // version is compared and entry is set by compute of entry, so builds of other entries don't wait
+            final boolean accepted = shard.compareAndSet(coverageMetaData, coverage, version, now);
+            // lock guards index, history and commits, work under it doesn't depend on count of entries
+            synchronized (shard) {
+                // repository unloaded after import is read again
+                if (shards.get(repoKey) != shard) continue;
+
+                if (accepted) update(shard, coverageMetaData, coverage, version, buildNumber, now);
+                else staleWrites.incrementAndGet();
+                if (commit != null) {
+                    // rebuild of same commit becomes newest
+                    shard.commits.remove(commit);
+                    shard.commits.put(commit, new CommitCoverage(commit, coverageMetaData, coverage));
+                    final Iterator<String> oldest = shard.commits.keySet().iterator();
+                    while (shard.commits.size() > maxCommits && oldest.hasNext()) {
+                        oldest.next();
+                        oldest.remove();
+                    }
+                }
+                pendingUpdates.incrementAndGet();
+                dirtyShards.add(repoKey);
+                return accepted;
+            }
+        }
+    }
+
+    /**
+     * Index, history and limits after accepted entry, caller holds shard lock
+     */
+    private void update(Shard shard, CoverageMetaData coverageMetaData, final Map<String, ReportData> coverage,
+                        final long version, int buildNumber, long now) {
+        // evicted after compute
+        if (!shard.entries.containsKey(coverageMetaData)) return;
+        shard.touch(coverageMetaData, now);
+
+        final String branch = coverageMetaData.getGitBranch();
+        if (branch != null) {
+            Map<String, LabelHistory> labels = shard.history.get(branch);
+            if (labels == null) {
+                labels = new HashMap<>();
+                shard.history.put(branch, labels);
+            }
+            final Map<String, ReportMetaData> definitions = getDefinitions(coverageMetaData);
+            for (Map.Entry<String, ReportData> label : coverage.entrySet()) {
+                final ReportMetaData definition = definitions.get(label.getKey());
+                LabelHistory history = labels.get(label.getKey());
+                if (history == null || !Objects.equals(history.definition, definition)) {
+                    // build of previous definition finished after build of new one
+                    if (history != null && history.history.size() > 0 && history.history.getTimestamp(0) > version) continue;
+                    // coverage of other definition is not comparable, so history starts again
+                    history = new LabelHistory(definition, new CoverageHistory(historySize));
+                    labels.put(label.getKey(), history);
+                }
+                // ordered by version, so build which takes lock after newer one doesn't break order
+                history.history.add(version, buildNumber, label.getValue());
+            }
+        }
+        evict(shard, now);
+    }
+
+    /**
+     * Receiver of entries for export
+     */
+    interface EntryVisitor {
+        void visit(CoverageMetaData coverageMetaData, Map<String, ReportData> coverage, long version) throws IOException;
+    }
+
+    /**
+     * Visit all entries repository by repository. Repository which is not loaded is read from file
+     * and not kept in memory, so only one repository is in memory in addition to loaded ones.
+     */
+    void forEachEntry(EntryVisitor visitor) throws IOException {
+        for (String repo : getRepositories()) {
+            Shard shard = shards.get(repo);
+            if (shard == null) shard = read(repo);
+
+            final Map<CoverageMetaData, Map<String, ReportData>> entries;
+            final Map<CoverageMetaData, Long> versions;
+            synchronized (shard) {
+                entries = new HashMap<>(shard.entries);
+                versions = new HashMap<>(shard.versions);
+            }
+            for (Map.Entry<CoverageMetaData, Map<String, ReportData>> entry : entries.entrySet()) {
+                final Long version = versions.get(entry.getKey());
+                visitor.visit(entry.getKey(), entry.getValue(), version != null ? version : shard.getWritten(entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * @return loaded repositories and repositories stored in files
+     */
+    private Set<String> getRepositories() {
+        final Set<String> repos = new TreeSet<>(shards.keySet());
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                final String name = file.getName();
+                if (name.endsWith(SHARD_SUFFIX)) repos.add(decodeRepoKey(name));
+            }
+        }
+        return repos;
+    }
+
+    public long getFlushWindowMillis() {
+        return flushWindowMillis;
+    }
+
+    public void setFlushWindowMillis(long flushWindowMillis) {
+        this.flushWindowMillis = flushWindowMillis;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @param maxEntries        - max entries per repository, <code>0</code> is unlimited
+     * @param ttlMillis         - time since last write when entry expires, <code>0</code> is never
+     * @param protectedBranches - globs of branches which are never removed
+     */
+    public void setLimits(int maxEntries, long ttlMillis, String protectedBranches) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.protectedBranches = toPattern(protectedBranches);
+        // oldest write was found with previous limits
+        for (Shard shard : shards.values()) {
+            synchronized (shard) {
+                shard.oldestWritten = 0;
+            }
+        }
+    }
+
+    public int getMaxLoadedEntries() {
+        return maxLoadedEntries;
+    }
+
+    /**
+     * @param maxLoadedEntries - max entries of all loaded repositories, <code>0</code> is unlimited
+     */
+    public void setMaxLoadedEntries(int maxLoadedEntries) {
+        this.maxLoadedEntries = maxLoadedEntries;
+    }
+
+    void setIdleMillis(long idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * @param definition - definition of label, <code>null</code> for label without definition like repo
+     * @param counter    - counter to take from snapshots, see {@link CoverageHistory#forCounter(CoverageCounter)}
+     * @return copy of label history of branch or <code>null</code> if not recorded with same label definition
+     */
+    public CoverageHistory getHistory(String gitUrl, String branch, String label, ReportMetaData definition,
+                                      CoverageCounter counter) {
+        final Shard shard = getShard(getRepoKey(gitUrl));
+        synchronized (shard) {
+            final Map<String, LabelHistory> labels = shard.history.get(branch);
+            final LabelHistory history = labels != null ? labels.get(label) : null;
+            if (history == null || !Objects.equals(history.definition, definition)) return null;
+            return history.history.forCounter(counter);
+        }
+    }
+
+    void setHistorySize(int historySize) {
+        this.historySize = historySize;
+    }
+
+    void setMaxCommits(int maxCommits) {
+        this.maxCommits = maxCommits;
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    private boolean isProtected(CoverageMetaData coverageMetaData) {
+        final Pattern pattern = protectedBranches;
+        return pattern != null && coverageMetaData.getGitBranch() != null
+                && pattern.matcher(coverageMetaData.getGitBranch()).matches();
+    }
+
+    private boolean isExpired(Shard shard, CoverageMetaData coverageMetaData, long now) {
+        if (ttlMillis <= 0 || isProtected(coverageMetaData)) return false;
+        final Long written = shard.written.get(coverageMetaData);
+        return written != null && written < now - ttlMillis;
+    }
+
+    /**
+     * Remove expired entries of repository then least recently used ones above limit, caller holds shard lock.
+     * Entries are scanned only when oldest write of repository is expired or repository is above limit.
+     */
+    private void evict(Shard shard, long now) {
+        final long ttl = ttlMillis;
+        if (ttl > 0 && shard.oldestWritten < now - ttl) {
+            long oldestWritten = Long.MAX_VALUE;
+            for (CoverageMetaData coverageMetaData : new ArrayList<>(shard.entries.keySet())) {
+                if (isExpired(shard, coverageMetaData, now)) {
+                    if (shard.remove(coverageMetaData)) expirations.incrementAndGet();
+                } else if (!isProtected(coverageMetaData)) {
+                    // entry without write time never expires
+                    final Long written = shard.written.get(coverageMetaData);
+                    if (written != null) oldestWritten = Math.min(oldestWritten, written);
+                }
+            }
+            shard.oldestWritten = oldestWritten;
+        }
+
+        final int limit = maxEntries;
+        if (limit <= 0 || shard.entries.size() <= limit) return;
+        final List<CoverageMetaData> candidates = new ArrayList<>();
+        for (CoverageMetaData coverageMetaData : shard.entries.keySet()) {
+            if (!isProtected(coverageMetaData)) candidates.add(coverageMetaData);
+        }
+        candidates.sort(Comparator.comparingLong(coverageMetaData -> shard.getUsed(coverageMetaData)));
+        for (int i = 0; i < candidates.size() && shard.entries.size() > limit; i++) {
+            if (shard.remove(candidates.get(i))) evictions.incrementAndGet();
+        }
+    }
+
+    private void scheduleFlush() {
+        // after close update is written by build thread
+        if (flushWindowMillis <= 0 || writer.isShutdown()) {
+            flush();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                writer.schedule(() -> {
+                    // updates which come while flush is in progress schedule next flush
+                    flushScheduled.set(false);
+                    flush();
+                }, flushWindowMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // closed after check
+                flushScheduled.set(false);
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Write all shards updated since last flush
+     */
+    synchronized void flush() {
+        if (dirtyShards.isEmpty()) return;
+
+        final long start = System.nanoTime();
+        pendingUpdates.set(0);
+        final List<String> repos = new ArrayList<>(dirtyShards);
+        dirtyShards.removeAll(repos);
+        for (String repo : repos) {
+            final Shard shard = shards.get(repo);
+            if (shard == null) continue;
+            // failed one is written with next update
+            if (save(shard)) shardWrites++;
+            else dirtyShards.add(repo);
+        }
+        final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        flushes++;
+        lastFlushMillis = duration;
+        totalFlushMillis += duration;
+        maxFlushMillis = Math.max(maxFlushMillis, duration);
+        // repositories above limit which were not written when loaded
+        if (isAboveLoadedLimit()) unload(clock.millis());
+    }
+
+    /**
+     * Start periodic sweep by writer
+     */
+    void startSweep() {
+        writer.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (RuntimeException e) {
+                // next sweep tries again
+                LOGGER.log(Level.WARNING, "Can't sweep branch coverage", e);
+            }
+        }, SWEEP_PERIOD_MILLIS, SWEEP_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Apply TTL and limit to all repositories, so file of repository which is not used expires too.
+     * Repository which is not loaded is loaded only for its check. Then unload idle repositories.
+     */
+    void sweep() {
+        final long now = clock.millis();
+        long entries = 0;
+        int repositories = 0;
+        for (String repo : getRepositories()) {
+            final Shard shard = getBackgroundShard(repo);
+            synchronized (shard) {
+                final int before = shard.entries.size();
+                evict(shard, now);
+                if (shard.entries.size() != before && shards.get(repo) == shard) dirtyShards.add(repo);
+                entries += shard.entries.size();
+            }
+            repositories++;
+            if (shard.background) releaseImported();
+        }
+        storedEntries = entries;
+        storedRepositories = repositories;
+        flush();
+        unload(now);
+    }
+
+    private boolean isAboveLoadedLimit() {
+        final int limit = maxLoadedEntries;
+        return limit > 0 && size() > limit;
+    }
+
+    /**
+     * Unload repositories not used longer than idle time, then least recently used ones while loaded entries
+     * are above limit. Most recently used repository is kept by limit, repository with not written updates
+     * is kept till it's written.
+     */
+    private void unload(long now) {
+        final List<Shard> loaded = new ArrayList<>(shards.values());
+        loaded.sort(Comparator.comparingLong(shard -> shard.lastUsed));
+        final int limit = maxLoadedEntries;
+        long entries = 0;
+        for (Shard shard : loaded) entries += shard.entries.size();
+
+        for (int i = 0; i < loaded.size(); i++) {
+            final Shard shard = loaded.get(i);
+            final boolean idle = now - shard.lastUsed > idleMillis;
+            final boolean aboveLimit = limit > 0 && entries > limit && i < loaded.size() - 1;
+            // ordered by last use, so next ones are not idle
+            if (!idle && !aboveLimit) break;
+            synchronized (shard) {
+                if (dirtyShards.contains(shard.repo) || !shards.remove(shard.repo, shard)) continue;
+                entries -= shard.entries.size();
+                unloads.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Stop writer and write pending updates
+     */
+    void close() {
+        writer.shutdown();
+        flush();
+    }
+
+    /**
+     * @return queue depth and flush latency of writer
+     */
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", size());
+        stats.put("loadedRepositories", shards.size());
+        stats.put("maxLoadedEntries", maxLoadedEntries);
+        stats.put("unloadedRepositories", unloads.get());
+        stats.put("storedEntries", storedEntries);
+        stats.put("storedRepositories", storedRepositories);
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlMillis", ttlMillis);
+        int commits = 0;
+        for (Shard shard : shards.values()) {
+            synchronized (shard) {
+                commits += shard.commits.size();
+            }
+        }
+        stats.put("commits", commits);
+        stats.put("evictions", evictions.get());
+        stats.put("expirations", expirations.get());
+        stats.put("staleWrites", staleWrites.get());
+        stats.put("pendingUpdates", pendingUpdates.get());
+        stats.put("pendingRepositories", dirtyShards.size());
+        stats.put("flushWindowMillis", flushWindowMillis);
+        stats.put("flushes", flushes);
+        stats.put("repositoryWrites", shardWrites);
+        stats.put("lastFlushMillis", lastFlushMillis);
+        stats.put("maxFlushMillis", maxFlushMillis);
+        stats.put("averageFlushMillis", flushes > 0 ? totalFlushMillis / flushes : 0);
+        return stats;
+    }
+
+    /**
+     * Add coverage stored by previous versions, file of each repository is written once before return
+     */
+    void migrate(Map<CoverageMetaData, Map<String, ReportData>> coverageByCoverageMetaData) {
+        for (Map.Entry<CoverageMetaData, Map<String, ReportData>> coverage : coverageByCoverageMetaData.entrySet()) {
+            final Shard shard = getShard(getRepoKey(coverage.getKey().getGitUrl()));
+            synchronized (shard) {
+                if (!shard.entries.containsKey(coverage.getKey())) {
+                    shard.put(coverage.getKey(), coverage.getValue(), clock.millis());
+                }
+                dirtyShards.add(shard.repo);
+            }
+        }
+        flush();
+    }
+
+    /**
+     * @return count of entries in loaded repositories
+     */
+    int size() {
+        int size = 0;
+        for (Shard shard : shards.values()) size += shard.entries.size();
+        return size;
+    }
+
+    /**
+     * @return loaded shard, file is read by first caller only
+     */
+    private Shard getShard(String repoKey) {
+        Shard shard = shards.get(repoKey);
+        if (shard == null) {
+            final boolean[] loaded = new boolean[1];
+            shard = shards.computeIfAbsent(repoKey, key -> {
+                final Shard read = read(key);
+                read.lastUsed = clock.millis();
+                loaded[0] = true;
+                return read;
+            });
+            if (loaded[0] && isAboveLoadedLimit()) unload(clock.millis());
+        }
+        shard.lastUsed = clock.millis();
+        if (shard.background) {
+            // used by build, so it's kept after import or sweep
+            synchronized (shard) {
+                shard.background = false;
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * @return loaded shard, one read by this call is marked as loaded in background
+     */
+    private Shard getBackgroundShard(String repoKey) {
+        final Shard shard = shards.get(repoKey);
+        return shard != null ? shard : shards.computeIfAbsent(repoKey, key -> {
+            final Shard read = readFile(key);
+            read.lastUsed = clock.millis();
+            read.background = true;
+            return read;
+        });
+    }
+
+    private Shard read(String repoKey) {
+        final Shard shard = readFile(repoKey);
+        // file is rewritten by next update of repository
+        synchronized (shard) {
+            evict(shard, clock.millis());
+        }
+        return shard;
+    }
+
+    private Shard readFile(String repoKey) {
+        final File file = getShardFile(repoKey);
+        if (file.isFile()) {
+            try {
+                return (Shard) new XmlFile(file).read();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Can't load branch coverage from " + file, e);
+            }
+        }
+        return new Shard(repoKey);
+    }
+
+    /**
+     * Load all repositories stored in files
+     */
+    void load() {
+        final File[] files = directory.listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            final String name = file.getName();
+            if (!name.endsWith(SHARD_SUFFIX)) continue;
+            getShard(decodeRepoKey(name));
+        }
+    }
+
+    private static String decodeRepoKey(String fileName) {
+        try {
+            return URLDecoder.decode(fileName.substring(0, fileName.length() - SHARD_SUFFIX.length()), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean save(Shard shard) {
+        try {
+            // commits and history are plain maps guarded by shard lock
+            synchronized (shard) {
+                new XmlFile(getShardFile(shard.repo)).write(shard);
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Can't save branch coverage of " + shard.repo, e);
+            return false;
+        }
+    }
+
+    File getShardFile(String repoKey) {
+        try {
+            return new File(directory, URLEncoder.encode(repoKey, "UTF-8") + SHARD_SUFFIX);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Coverage of one repository, unit of persistence
+     */
+    static final class Shard implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String repo;
+        private final Map<CoverageMetaData, Map<String, ReportData>> entries = new ConcurrentHashMap<>();
+        // last write and last lookup time of entry, missed for files written by previous versions
+        private Map<CoverageMetaData, Long> written = new ConcurrentHashMap<>();
+        private Map<CoverageMetaData, Long> used = new ConcurrentHashMap<>();
+        // start time of build which recorded entry
+        private ConcurrentHashMap<CoverageMetaData, Long> versions = new ConcurrentHashMap<>();
+        // branch to label to history, guarded by shard lock
+        private HashMap<String, Map<String, LabelHistory>> history = new HashMap<>();
+        // commit SHA to coverage in order of record, guarded by shard lock
+        private LinkedHashMap<String, CommitCoverage> commits = new LinkedHashMap<>();
+
+        Shard(String repo) {
+            this.repo = repo;
+        }
+
+        // branch to label to last coverage and branch to its entries, built on first lookup or removal
+        // and then changed by writes under shard lock
+        private transient volatile Map<String, Map<String, LabelCoverage>> index;
+        private transient Map<String, Set<CoverageMetaData>> branchEntries;
+        // no entry written before it expires, guarded by shard lock
+        private transient long oldestWritten;
+        // loaded by import or sweep and not used by build since
+        private transient volatile boolean background;
+        // last lookup or write of repository, for unload of least recently used one
+        private transient volatile long lastUsed;
+
+        private Object readResolve() {
+            if (written == null) written = new ConcurrentHashMap<>();
+            if (used == null) used = new ConcurrentHashMap<>();
+            if (commits == null) commits = new LinkedHashMap<>();
+            if (versions == null) versions = new ConcurrentHashMap<>();
+            if (history == null) history = new HashMap<>();
+            return this;
+        }
+
+        private Map<String, Map<String, LabelCoverage>> getIndex() {
+            Map<String, Map<String, LabelCoverage>> result = index;
+            if (result == null) {
+                synchronized (this) {
+                    if (index == null) {
+                        // one pass over entries in order of write, label of later written entry wins
+                        final List<CoverageMetaData> ordered = new ArrayList<>(entries.keySet());
+                        ordered.sort(Comparator.comparingLong(this::getWritten));
+                        final Map<String, Map<String, LabelCoverage>> branches = new ConcurrentHashMap<>();
+                        branchEntries = new HashMap<>();
+                        for (CoverageMetaData coverageMetaData : ordered) {
+                            final String branch = coverageMetaData.getGitBranch();
+                            if (branch == null) continue;
+                            branchEntries.computeIfAbsent(branch, key -> new HashSet<>()).add(coverageMetaData);
+                            addLabels(branches.computeIfAbsent(branch, key -> new ConcurrentHashMap<>()), coverageMetaData);
+                        }
+                        index = branches;
+                    }
+                    result = index;
+                }
+            }
+            return result;
+        }
+
+        private void addLabels(Map<String, LabelCoverage> labels, CoverageMetaData coverageMetaData) {
+            final Map<String, ReportData> coverage = entries.get(coverageMetaData);
+            if (coverage == null) return;
+            final Map<String, ReportMetaData> definitions = getDefinitions(coverageMetaData);
+            for (String label : coverage.keySet()) {
+                labels.put(label, new LabelCoverage(label, definitions.get(label), coverageMetaData));
+            }
+        }
+
+        /**
+         * Labels of written entry win, it's the last written one of branch
+         */
+        private void index(CoverageMetaData coverageMetaData) {
+            final String branch = coverageMetaData.getGitBranch();
+            if (index == null || branch == null) return;
+            branchEntries.computeIfAbsent(branch, key -> new HashSet<>()).add(coverageMetaData);
+            addLabels(index.computeIfAbsent(branch, key -> new ConcurrentHashMap<>()), coverageMetaData);
+        }
+
+        /**
+         * Labels taken from removed entry are taken from last written other entry of branch with same label,
+         * branch without entries is dropped with its history
+         */
+        private void unindex(CoverageMetaData coverageMetaData) {
+            final String branch = coverageMetaData.getGitBranch();
+            if (branch == null) return;
+            final Map<String, Map<String, LabelCoverage>> current = getIndex();
+            final Set<CoverageMetaData> siblings = branchEntries.get(branch);
+            if (siblings != null) siblings.remove(coverageMetaData);
+            if (siblings == null || siblings.isEmpty()) {
+                branchEntries.remove(branch);
+                current.remove(branch);
+                history.remove(branch);
+                return;
+            }
+
+            final Map<String, LabelCoverage> labels = current.get(branch);
+            for (LabelCoverage labelCoverage : new ArrayList<>(labels.values())) {
+                if (!labelCoverage.source.equals(coverageMetaData)) continue;
+                CoverageMetaData last = null;
+                for (CoverageMetaData sibling : siblings) {
+                    final Map<String, ReportData> coverage = entries.get(sibling);
+                    if (coverage != null && coverage.containsKey(labelCoverage.label)
+                            && (last == null || getWritten(sibling) >= getWritten(last))) last = sibling;
+                }
+                if (last == null) labels.remove(labelCoverage.label);
+                else labels.put(labelCoverage.label,
+                        new LabelCoverage(labelCoverage.label, getDefinitions(last).get(labelCoverage.label), last));
+            }
+        }
+
+        private long getWritten(CoverageMetaData coverageMetaData) {
+            final Long time = written.get(coverageMetaData);
+            return time != null ? time : 0;
+        }
+
+        private void put(CoverageMetaData coverageMetaData, Map<String, ReportData> coverage, long now) {
+            entries.put(coverageMetaData, coverage);
+            touch(coverageMetaData, now);
+        }
+
+        private void touch(CoverageMetaData coverageMetaData, long now) {
+            written.put(coverageMetaData, now);
+            used.put(coverageMetaData, now);
+            oldestWritten = Math.min(oldestWritten, now);
+            index(coverageMetaData);
+        }
+
+        /**
+         * Set entry if it has no newer version, entry and version are changed at once for each entry
+         *
+         * @return <code>false</code> if entry has coverage of newer build
+         */
+        private boolean compareAndSet(CoverageMetaData coverageMetaData, final Map<String, ReportData> coverage,
+                                      final long version, final long now) {
+            final boolean[] accepted = new boolean[1];
+            versions.compute(coverageMetaData, (key, current) -> {
+                if (current != null && current > version) return current;
+                entries.put(key, coverage);
+                // not least recently used one till index is updated
+                written.put(key, now);
+                used.put(key, now);
+                accepted[0] = true;
+                return version;
+            });
+            return accepted[0];
+        }
+
+        private long getUsed(CoverageMetaData coverageMetaData) {
+            final Long time = used.get(coverageMetaData);
+            return time != null ? time : 0;
+        }
+
+        /**
+         * Caller holds shard lock
+         */
+        private boolean remove(CoverageMetaData coverageMetaData) {
+            final boolean[] removed = new boolean[1];
+            versions.compute(coverageMetaData, (key, current) -> {
+                removed[0] = entries.remove(key) != null;
+                written.remove(key);
+                used.remove(key);
+                return null;
+            });
+            if (removed[0]) unindex(coverageMetaData);
+            return removed[0];
+        }
+    }
+
+    /**
+     * Coverage recorded for commit
+     */
+    public static final class CommitCoverage implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String commit;
+        private final CoverageMetaData coverageMetaData;
+        private final Map<String, ReportData> coverage;
+
+        CommitCoverage(String commit, CoverageMetaData coverageMetaData, Map<String, ReportData> coverage) {
+            this.commit = commit;
+            this.coverageMetaData = coverageMetaData;
+            this.coverage = coverage;
+        }
+
+        public String getCommit() {
+            return commit;
+        }
+
+        public CoverageMetaData getCoverageMetaData() {
+            return coverageMetaData;
+        }
+
+        public Map<String, ReportData> getCoverage() {
+            return coverage;
+        }
+    }
+
+    /**
+     * History of label and definition of label it's recorded with
+     */
+    private static final class LabelHistory implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        // null for label without definition like repo
+        private final ReportMetaData definition;
+        private final CoverageHistory history;
+
+        private LabelHistory(ReportMetaData definition, CoverageHistory history) {
+            this.definition = definition;
+            this.history = history;
+        }
+    }
+
+    /**
+     * Label of indexed branch and entry it's taken from
+     */
+    private static final class LabelCoverage {
+        private final String label;
+        // null for label without definition like repo
+        private final ReportMetaData reportMetaData;
+        private final CoverageMetaData source;
+
+        private LabelCoverage(String label, ReportMetaData reportMetaData, CoverageMetaData source) {
+            this.label = label;
+            this.reportMetaData = reportMetaData;
+            this.source = source;
+        }
+    }
+
+}
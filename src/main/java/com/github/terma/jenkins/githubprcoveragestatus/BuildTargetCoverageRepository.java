@@ -18,10 +18,14 @@ limitations under the License.
 package com.github.terma.jenkins.githubprcoveragestatus;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class BuildTargetCoverageRepository implements TargetCoverageRepository {
 
+    private static final int MAX_CANDIDATES = 10;
+
     private final PrintStream buildLog;
 
     public BuildTargetCoverageRepository(final PrintStream buildLog) {
@@ -31,14 +35,69 @@ public class BuildTargetCoverageRepository implements TargetCoverageRepository {
     @Override
     public Map<String, ReportData> get(CoverageMetaData coverageMetaData) {
         if (coverageMetaData == null) return null;
-        final Map<String, ReportData> coverageData = Configuration.DESCRIPTOR.getCoverageByCoverageMetaData().get(coverageMetaData);
+        final BranchCoverageStore store = ServiceRegistry.getBranchCoverageStore();
+        Map<String, ReportData> coverageData = store.find(coverageMetaData);
         if (coverageData == null) {
-            buildLog.println("Can't find target coverage repository: " + coverageMetaData
-                    + " in stored: " + Configuration.DESCRIPTOR.getCoverageByCoverageMetaData() + "\n"
+            buildLog.println("Can't find target coverage repository: " + coverageMetaData + "\n"
+                    + "Closest recorded branches: "
+                    + store.getClosestBranches(coverageMetaData.getGitUrl(), coverageMetaData.getGitBranch(), MAX_CANDIDATES) + "\n"
                     + "Make sure that you have run build with step: " + BranchCoverageAction.DISPLAY_NAME);
-            return null;
+
+            final String fallbacks = ServiceRegistry.getSettingsRepository().getTargetBranchFallbacks();
+            if (fallbacks == null) return null;
+            for (String fallback : fallbacks.split("[,\\n]")) {
+                fallback = fallback.trim();
+                if (fallback.isEmpty() || fallback.equals(coverageMetaData.getGitBranch())) continue;
+                coverageData = store.find(new CoverageMetaData(
+                        coverageMetaData.getGitUrl(), fallback, coverageMetaData.getReportMetaDataList()));
+                if (coverageData != null) {
+                    buildLog.println("Use coverage of fallback branch " + fallback + " as target coverage");
+                    break;
+                }
+            }
+            if (coverageData == null) return null;
+        }
+        final List<String> missedLabels = new ArrayList<>();
+        if (coverageMetaData.getReportMetaDataList() != null) {
+            for (ReportMetaData reportMetaData : coverageMetaData.getReportMetaDataList()) {
+                if (!coverageData.containsKey(reportMetaData.getLabel())) missedLabels.add(reportMetaData.getLabel());
+            }
+        }
+        if (!missedLabels.isEmpty()) {
+            buildLog.println("Can't find target coverage of labels: " + missedLabels
+                    + ", they were added or changed after last build of target branch");
         }
         return coverageData;
     }
 
+    @Override
+    public CoverageHistory getHistory(CoverageMetaData coverageMetaData, String label, CoverageCounter counter) {
+        if (coverageMetaData == null) return null;
+        ReportMetaData definition = null;
+        if (coverageMetaData.getReportMetaDataList() != null) {
+            for (ReportMetaData reportMetaData : coverageMetaData.getReportMetaDataList()) {
+                if (label.equals(reportMetaData.getLabel())) definition = reportMetaData;
+            }
+        }
+        return ServiceRegistry.getBranchCoverageStore().getHistory(
+                coverageMetaData.getGitUrl(), coverageMetaData.getGitBranch(), label, definition, counter);
+    }
+
+    @Override
+    public Map<String, ReportData> getByCommits(CoverageMetaData coverageMetaData, List<String> commits) {
+        if (coverageMetaData == null || commits.isEmpty()) return null;
+        final BranchCoverageStore.CommitCoverage commitCoverage =
+                ServiceRegistry.getBranchCoverageStore().findByCommits(coverageMetaData, commits);
+        if (commitCoverage == null) {
+            buildLog.println("Can't find coverage of merge base " + commits.get(0)
+                    + " or its " + (commits.size() - 1) + " ancestors, use last coverage of target branch");
+            return null;
+        }
+        final int distance = commits.indexOf(commitCoverage.getCommit());
+        buildLog.println("Use coverage of commit " + commitCoverage.getCommit() + " recorded by "
+                + commitCoverage.getCoverageMetaData().getGitBranch()
+                + (distance == 0 ? ", merge base" : ", " + distance + " commits before merge base"));
+        return commitCoverage.getCoverage();
+    }
+
 }
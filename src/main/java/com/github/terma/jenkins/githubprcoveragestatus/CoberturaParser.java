@@ -18,8 +18,11 @@ limitations under the License.
 package com.github.terma.jenkins.githubprcoveragestatus;
 
 import javax.xml.stream.*;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,6 +31,12 @@ import java.util.regex.Pattern;
  */
 class CoberturaParser implements CoverageReportParser {
 
+    /**
+     * How many bytes from the beginning of report are read to find root <code>coverage</code> element.
+     * Only prolog (XML declaration, DOCTYPE) precede it, so usually it's in first few hundred bytes.
+     */
+    static final int HEAD_SIZE = 8 * 1024;
+
     private static String findFirst(String string, String pattern) {
         String result = findFirstOrNull(string, pattern);
         if (result != null) {
@@ -71,44 +80,69 @@ class CoberturaParser implements CoverageReportParser {
     @Override
     public ReportData get(String coberturaFilePath) {
         try {
-            int linesCovered = 0, linesValid = 0, branchesCovered = 0, branchesValid = 0;
-            float lineRate = 0.0f, branchRate = 0.0f;
-            String tag = null;
-            boolean foundCoverage = false;
-
-            // Read XML using StAX
-            XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
-            XMLStreamReader xmlStreamReader = xmlInputFactory
-                    .createXMLStreamReader(new FileInputStream(coberturaFilePath));
-            int eventType;
-            while(xmlStreamReader.hasNext()) {
-                eventType = xmlStreamReader.getEventType();
-                switch (eventType) {
-                    case XMLStreamReader.START_ELEMENT:
-                        tag = xmlStreamReader.getLocalName();
-                        if(tag.equals("coverage")) {
-                            lineRate = getFloatCoverageAttributeValue(xmlStreamReader, coberturaFilePath, tag, "line-rate");
-                            linesCovered = getIntegerCoverageAttributeValue(xmlStreamReader, coberturaFilePath, tag, "lines-covered");
-                            linesValid = getIntegerCoverageAttributeValue(xmlStreamReader, coberturaFilePath, tag, "lines-valid");
-                            branchRate = getFloatCoverageAttributeValue(xmlStreamReader, coberturaFilePath, tag, "branch-rate");
-                            branchesCovered = getIntegerCoverageAttributeValue(xmlStreamReader, coberturaFilePath, tag, "branches-covered");
-                            branchesValid = getIntegerCoverageAttributeValue(xmlStreamReader, coberturaFilePath,tag, "branches-valid");
-                            foundCoverage = true;
-                        }
-                        break;
-                    case XMLStreamReader.END_ELEMENT:
-                        break;
-                }
-                if(foundCoverage) break;
-                xmlStreamReader.next();
-            }
-            xmlStreamReader.close();
+            final ReportData headReportData = getFromHead(coberturaFilePath);
+            if (headReportData != null) return headReportData;
 
-            return new ReportData(linesCovered, linesValid);
+            // root element is not in head, for example huge comment before it
+            try (InputStream inputStream = new BufferedInputStream(new FileInputStream(coberturaFilePath))) {
+                final ReportData reportData = parse(inputStream, coberturaFilePath);
+                return reportData != null ? reportData : new ReportData();
+            }
         } catch (IOException | XMLStreamException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * @return coverage or <code>null</code> if root element is not complete in first {@link #HEAD_SIZE} bytes
+     */
+    private ReportData getFromHead(String coberturaFilePath) throws IOException {
+        final byte[] head = new byte[HEAD_SIZE];
+        int length = 0;
+        try (InputStream inputStream = new FileInputStream(coberturaFilePath)) {
+            int read;
+            while (length < head.length && (read = inputStream.read(head, length, head.length - length)) >= 0) {
+                length += read;
+            }
+        }
+
+        try {
+            return parse(new ByteArrayInputStream(head, 0, length), coberturaFilePath);
+        } catch (XMLStreamException e) {
+            // head is cut before end of root element
+            return null;
+        }
+    }
+
+    /**
+     * Read attributes of root <code>coverage</code> element and stop.
+     *
+     * @return coverage or <code>null</code> if there is no <code>coverage</code> element
+     */
+    private ReportData parse(InputStream inputStream, String coberturaFilePath) throws XMLStreamException {
+        final XMLStreamReader xmlStreamReader = XmlUtils.createXmlStreamReader(inputStream);
+        try {
+            while (xmlStreamReader.hasNext()) {
+                if (xmlStreamReader.next() == XMLStreamReader.START_ELEMENT) {
+                    final String tag = xmlStreamReader.getLocalName();
+                    if (tag.equals("coverage")) {
+                        getFloatCoverageAttributeValue(xmlStreamReader, coberturaFilePath, tag, "line-rate");
+                        final int linesCovered = getIntegerCoverageAttributeValue(xmlStreamReader, coberturaFilePath, tag, "lines-covered");
+                        final int linesValid = getIntegerCoverageAttributeValue(xmlStreamReader, coberturaFilePath, tag, "lines-valid");
+                        getFloatCoverageAttributeValue(xmlStreamReader, coberturaFilePath, tag, "branch-rate");
+                        final int branchesCovered = getIntegerCoverageAttributeValue(xmlStreamReader, coberturaFilePath, tag, "branches-covered");
+                        final int branchesValid = getIntegerCoverageAttributeValue(xmlStreamReader, coberturaFilePath, tag, "branches-valid");
+                        final ReportData reportData = new ReportData(linesCovered, linesValid);
+                        reportData.setCounter(CoverageCounter.LINE, linesCovered, linesValid);
+                        reportData.setCounter(CoverageCounter.BRANCH, branchesCovered, branchesValid);
+                        return reportData;
+                    }
+                }
+            }
+            return null;
+        } finally {
+            xmlStreamReader.close();
+        }
+    }
 
 }
@@ -30,7 +30,6 @@ import hudson.tasks.Publisher;
 import hudson.tasks.Recorder;
 import jenkins.tasks.SimpleBuildStep;
 import org.kohsuke.github.GHCommitState;
-import org.kohsuke.github.GHPullRequestCommitDetail;
 import org.kohsuke.github.GHRepository;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
@@ -66,6 +65,9 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
     private String jacocoCounterType;
     private Map<String, String> scmVars;
     private List<ReportMetaData> reportMetaDataList;
+    private String reportPaths;
+    private String reportManifest;
+    private int baselineWindow;
 
     @DataBoundConstructor
     public CompareCoverageAction() {
@@ -88,6 +90,18 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
         return reportMetaDataList;
     }
 
+    public String getReportPaths() {
+        return reportPaths;
+    }
+
+    public String getReportManifest() {
+        return reportManifest;
+    }
+
+    public int getBaselineWindow() {
+        return baselineWindow;
+    }
+
     @DataBoundSetter
     public void setPublishResultAs(String publishResultAs) {
         this.publishResultAs = publishResultAs;
@@ -108,6 +122,21 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
         this.reportMetaDataList = reportMetaDataList;
     }
 
+    @DataBoundSetter
+    public void setReportPaths(String reportPaths) {
+        this.reportPaths = reportPaths;
+    }
+
+    @DataBoundSetter
+    public void setReportManifest(String reportManifest) {
+        this.reportManifest = reportManifest;
+    }
+
+    @DataBoundSetter
+    public void setBaselineWindow(int baselineWindow) {
+        this.baselineWindow = baselineWindow;
+    }
+
 
     // todo show message that addition comment in progress as it could take a while
     @SuppressWarnings("NullableProblems")
@@ -134,7 +163,6 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
         String jenkinsUrl = settingsRepository.getJenkinsUrl();
         if (jenkinsUrl == null) jenkinsUrl = Utils.getJenkinsUrlFromBuildUrl(buildUrl);
 
-        final int prId = PrIdAndUrlUtils.getPrId(scmVars, build, listener);
         final String gitUrl = PrIdAndUrlUtils.getGitUrl(scmVars, build, listener);
         final String changeTarget = PrIdAndUrlUtils.getChangeTarget(scmVars, build, listener);
         final String branchName = PrIdAndUrlUtils.getBranchName(scmVars, build, listener);
@@ -145,29 +173,63 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
         CoverageMetaData coverageMetaData = new CoverageMetaData(gitUrl, changeTarget, reportMetaDataList);
         buildLog.println(BUILD_LOG_PREFIX + "CoverageMetaData: " + coverageMetaData);
 
-        final GHRepository gitHubRepository = ServiceRegistry.getPullRequestRepository().getGitHubRepository(buildLog, gitUrl);
+        final int prId;
+        final GHRepository gitHubRepository;
+        try {
+            // multibranch build discovers pull request by GitHub API, so it waits for quota too
+            prId = PrIdAndUrlUtils.getPrId(scmVars, build, listener);
+            gitHubRepository = ServiceRegistry.getPullRequestRepository().getGitHubRepository(buildLog, gitUrl);
+        } catch (RateLimitTracker.RateLimitExceededException e) {
+            // don't fail build because of quota, coverage is published by next build
+            buildLog.println(BUILD_LOG_PREFIX + "skip publishing, " + e.getMessage());
+            return;
+        }
 
         buildLog.println(BUILD_LOG_PREFIX + "getting target coverage...");
-        Map<String, ReportData> targetCoverageData = ServiceRegistry
-                .getTargetCoverageRepository(buildLog).get(coverageMetaData);
+        final TargetCoverageRepository targetCoverageRepository = ServiceRegistry.getTargetCoverageRepository(buildLog);
+        Map<String, ReportData> targetCoverageData = null;
+        if (settingsRepository.isCompareWithMergeBase()) {
+            final List<String> commits = workspace.act(new GitAncestorsCallable(changeTarget, GitAncestorsCallable.DEFAULT_MAX_ANCESTORS));
+            buildLog.println(BUILD_LOG_PREFIX + "Merge Base: " + (commits.isEmpty() ? "unknown" : commits.get(0)));
+            if (!commits.isEmpty()) targetCoverageData = targetCoverageRepository.getByCommits(coverageMetaData, commits);
+        }
+        // exact merge base coverage is not smoothed
+        final boolean smoothTarget = targetCoverageData == null && baselineWindow > 1;
+        if (targetCoverageData == null) targetCoverageData = targetCoverageRepository.get(coverageMetaData);
         buildLog.println(BUILD_LOG_PREFIX + " targetCoverage: " + targetCoverageData);
 
         buildLog.println(BUILD_LOG_PREFIX + "collecting build coverage...");
         Map<String, ReportData> coverageData = ServiceRegistry.getCoverageRepository(settingsRepository.isDisableSimpleCov(),
-                jacocoCounterType, coverageMetaData.getReportMetaDataList()).get(workspace);
+                jacocoCounterType, coverageMetaData.getReportMetaDataList(), reportPaths, reportManifest, listener).get(workspace);
         buildLog.println(BUILD_LOG_PREFIX + " coverage: " + coverageData);
 
         if(targetCoverageData==null) buildLog.println(BUILD_LOG_PREFIX + " Record Branch Coverage with CoverageMetaData: " + coverageMetaData);
 
+        // target coverage could be recorded with other counter type, take same counter as build if stored
+        final CoverageCounter counter = JacocoParser.toCoverageCounter(jacocoCounterType);
         List<Message> messages = new ArrayList<>();
         float coverage, targetCoverage;
         for(String label: coverageData.keySet()) {
             coverage = coverageData.get(label).getRate();
 
-            if(targetCoverageData!=null && targetCoverageData.containsKey(label)) targetCoverage = targetCoverageData.get(label).getRate();
+            if(targetCoverageData!=null && targetCoverageData.containsKey(label)) targetCoverage = targetCoverageData.get(label).getRate(counter);
             else targetCoverage = 0;
 
+            if (smoothTarget) {
+                final CoverageHistory history = targetCoverageRepository.getHistory(coverageMetaData, label, counter);
+                // history of builds without code has no average
+                final float average = history != null ? history.getAverageRate(baselineWindow) : Float.NaN;
+                if (!Float.isNaN(average)) {
+                    targetCoverage = average;
+                    buildLog.println(BUILD_LOG_PREFIX + label + " target trend of last " + Math.min(baselineWindow, history.size())
+                            + " builds: min " + Percent.toWholeNoSignString(history.getMinRate(baselineWindow))
+                            + ", max " + Percent.toWholeNoSignString(history.getMaxRate(baselineWindow))
+                            + ", average " + Percent.toWholeNoSignString(targetCoverage));
+                }
+            }
+
             messages.add(new Message(label, coverage, targetCoverage, branchName, changeTarget));
+            logCounters(buildLog, label, coverageData.get(label), targetCoverageData != null ? targetCoverageData.get(label) : null);
         }
         buildLog.println(BUILD_LOG_PREFIX + " messages: " + messages);
 
@@ -176,11 +238,20 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
             publishComment(messages, buildUrl, jenkinsUrl, settingsRepository, gitHubRepository, prId, listener);
         } else {
             buildLog.println(BUILD_LOG_PREFIX + "publishing result as status check");
-            publishStatusCheck(messages, buildUrl, settingsRepository, gitHubRepository, prId, listener);
+            publishStatusCheck(messages, buildUrl, settingsRepository, gitHubRepository, prId, build, listener);
         }
 
     }
 
+    private static void logCounters(PrintStream buildLog, String label, ReportData reportData, ReportData targetReportData) {
+        for (Map.Entry<CoverageCounter, ReportData> counter : reportData.getCounters().entrySet()) {
+            final ReportData targetCounter = targetReportData != null ? targetReportData.getCounter(counter.getKey()) : null;
+            buildLog.println(BUILD_LOG_PREFIX + label + " " + counter.getKey() + ": "
+                    + Percent.toWholeNoSignString(counter.getValue().getRate())
+                    + (targetCounter != null ? " vs " + Percent.toWholeNoSignString(targetCounter.getRate()) : ""));
+        }
+    }
+
     private void publishComment(
             List<Message> messages,
             String buildUrl,
@@ -212,14 +283,15 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
             SettingsRepository settingsRepository,
             GHRepository gitHubRepository,
             int prId,
+            Run build,
             TaskListener listener
     ) {
         try {
-            List<GHPullRequestCommitDetail> commits = gitHubRepository.getPullRequest(prId).listCommits().asList();
+            final String headSha = getHeadSha(gitHubRepository, prId, build, listener);
             for(Message message: messages) {
                 ServiceRegistry.getPullRequestRepository().createCommitStatus(
                     gitHubRepository,
-                    commits.get(commits.size() - 1).getSha(),
+                    headSha,
                     message.hasFailed(
                         settingsRepository.getYellowThreshold(),
                         settingsRepository.getGreenThreshold()
@@ -234,6 +306,22 @@ public class CompareCoverageAction extends Recorder implements SimpleBuildStep {
         }
     }
 
+    /**
+     * Head commit from build variables or from pull request, resolved once per build
+     */
+    private String getHeadSha(GHRepository gitHubRepository, int prId, Run build, TaskListener listener)
+            throws IOException, InterruptedException {
+        // build is raw type, so action class is erased
+        final PullRequestHeadAction resolved = (PullRequestHeadAction) build.getAction(PullRequestHeadAction.class);
+        if (resolved != null && resolved.getPrId() == prId) return resolved.getSha();
+
+        String headSha = PrIdAndUrlUtils.getPullRequestHeadSha(scmVars, build, listener);
+        if (headSha == null) headSha = ServiceRegistry.getPullRequestRepository().getHeadSha(gitHubRepository, prId);
+        listener.getLogger().println(BUILD_LOG_PREFIX + "Head commit of PR: " + headSha);
+        build.addAction(new PullRequestHeadAction(prId, headSha));
+        return headSha;
+    }
+
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.NONE;
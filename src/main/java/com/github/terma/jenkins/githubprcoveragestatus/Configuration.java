@@ -30,6 +30,7 @@ import org.kohsuke.stapler.StaplerRequest;
 import javax.annotation.Nonnull;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings("WeakerAccess")
 public class Configuration extends AbstractDescribableImpl<Configuration> {
@@ -58,7 +59,7 @@ public class Configuration extends AbstractDescribableImpl<Configuration> {
     }
 
     public static void setBranchCoverage(CoverageMetaData coverageMetaData, Map<String, ReportData> coverageData) {
-        DESCRIPTOR.set(coverageMetaData, coverageData);
+        ServiceRegistry.getBranchCoverageStore().put(coverageMetaData, coverageData);
     }
 
     @Override
@@ -72,6 +73,9 @@ public class Configuration extends AbstractDescribableImpl<Configuration> {
         private static final int DEFAULT_YELLOW_THRESHOLD = 80;
         private static final int DEFAULT_GREEN_THRESHOLD = 90;
 
+        /**
+         * Branch coverage stored by previous versions, moved to {@link BranchCoverageStore} on first use
+         */
         private final Map<CoverageMetaData, Map<String, ReportData>> coverageByCoverageMetaData = new ConcurrentHashMap<CoverageMetaData, Map<String, ReportData>>();
 
         private boolean disableSimpleCov;
@@ -82,6 +86,21 @@ public class Configuration extends AbstractDescribableImpl<Configuration> {
 
         private int yellowThreshold = DEFAULT_YELLOW_THRESHOLD;
         private int greenThreshold = DEFAULT_GREEN_THRESHOLD;
+        private int parserThreads;
+        private String reportExcludes;
+        private boolean followSymlinks = true;
+        private boolean reportCache;
+        private boolean reportCacheVerifyHash;
+        private long branchCoverageFlushWindow = BranchCoverageStore.DEFAULT_FLUSH_WINDOW_MILLIS;
+        private int branchCoverageMaxEntries = BranchCoverageStore.DEFAULT_MAX_ENTRIES;
+        private int branchCoverageMaxLoadedEntries = BranchCoverageStore.DEFAULT_MAX_LOADED_ENTRIES;
+        private int branchCoverageTtlDays;
+        private String branchCoverageProtectedBranches = BranchCoverageStore.DEFAULT_PROTECTED_BRANCHES;
+        private String targetBranchFallbacks;
+        private boolean compareWithMergeBase;
+        private long rateLimitMaxWait = RateLimitTracker.DEFAULT_MAX_WAIT_SECONDS;
+        private int gitHubRequestsPerMinute = GitHubRequestScheduler.DEFAULT_REQUESTS_PER_MINUTE;
+        private int gitHubMaxConcurrentRequests = GitHubRequestScheduler.DEFAULT_MAX_CONCURRENT;
 
         public ConfigurationDescriptor() {
             load();
@@ -92,13 +111,27 @@ public class Configuration extends AbstractDescribableImpl<Configuration> {
             return "Coverage status for GitHub Pull Requests";
         }
 
+        /**
+         * @deprecated branch coverage is kept by {@link BranchCoverageStore}, this is not migrated coverage only
+         */
+        @Deprecated
         @Nonnull
         public Map<CoverageMetaData, Map<String, ReportData>> getCoverageByCoverageMetaData() {
             return coverageByCoverageMetaData;
         }
 
         public void set(CoverageMetaData coverageMetaData, Map<String, ReportData> coverageData) {
-            coverageByCoverageMetaData.put(coverageMetaData, coverageData);
+            ServiceRegistry.getBranchCoverageStore().put(coverageMetaData, coverageData);
+        }
+
+        /**
+         * Move branch coverage from global configuration to store, configuration is saved without it
+         */
+        synchronized void migrateBranchCoverage(BranchCoverageStore store) {
+            if (coverageByCoverageMetaData.isEmpty()) return;
+
+            store.migrate(coverageByCoverageMetaData);
+            coverageByCoverageMetaData.clear();
             save();
         }
 
@@ -137,6 +170,92 @@ public class Configuration extends AbstractDescribableImpl<Configuration> {
             return jenkinsUrl;
         }
 
+        @Override
+        public int getParserThreads() {
+            return parserThreads;
+        }
+
+        @Override
+        public String getReportExcludes() {
+            return reportExcludes;
+        }
+
+        @Override
+        public boolean isFollowSymlinks() {
+            return followSymlinks;
+        }
+
+        @Override
+        public boolean isReportCache() {
+            return reportCache;
+        }
+
+        @Override
+        public boolean isReportCacheVerifyHash() {
+            return reportCacheVerifyHash;
+        }
+
+        /**
+         * @return milliseconds to collect branch coverage updates before they are written by one flush
+         */
+        public long getBranchCoverageFlushWindow() {
+            return branchCoverageFlushWindow;
+        }
+
+        /**
+         * @return max branch coverage entries kept per repository, <code>0</code> is unlimited
+         */
+        public int getBranchCoverageMaxEntries() {
+            return branchCoverageMaxEntries;
+        }
+
+        /**
+         * @return max branch coverage entries kept in memory for all repositories, <code>0</code> is unlimited
+         */
+        public int getBranchCoverageMaxLoadedEntries() {
+            return branchCoverageMaxLoadedEntries;
+        }
+
+        /**
+         * @return days since last build when branch coverage is removed, <code>0</code> is never
+         */
+        public int getBranchCoverageTtlDays() {
+            return branchCoverageTtlDays;
+        }
+
+        public String getBranchCoverageProtectedBranches() {
+            return branchCoverageProtectedBranches;
+        }
+
+        @Override
+        public String getTargetBranchFallbacks() {
+            return targetBranchFallbacks;
+        }
+
+        @Override
+        public boolean isCompareWithMergeBase() {
+            return compareWithMergeBase;
+        }
+
+        @Override
+        public long getRateLimitMaxWait() {
+            return rateLimitMaxWait;
+        }
+
+        /**
+         * @return GitHub API calls per minute for one credential, <code>0</code> is unlimited
+         */
+        public int getGitHubRequestsPerMinute() {
+            return gitHubRequestsPerMinute;
+        }
+
+        /**
+         * @return GitHub API calls running at once for all builds, <code>0</code> is unlimited
+         */
+        public int getGitHubMaxConcurrentRequests() {
+            return gitHubMaxConcurrentRequests;
+        }
+
         @Override
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
             gitHubApiUrl = StringUtils.trimToNull(formData.getString("gitHubApiUrl"));
@@ -146,6 +265,32 @@ public class Configuration extends AbstractDescribableImpl<Configuration> {
             jenkinsUrl = StringUtils.trimToNull(formData.getString("jenkinsUrl"));
             privateJenkinsPublicGitHub = BooleanUtils.toBoolean(formData.getString("privateJenkinsPublicGitHub"));
             disableSimpleCov = BooleanUtils.toBoolean(formData.getString("disableSimpleCov"));
+            parserThreads = NumberUtils.toInt(formData.getString("parserThreads"), 0);
+            reportExcludes = StringUtils.trimToNull(formData.getString("reportExcludes"));
+            followSymlinks = BooleanUtils.toBoolean(formData.getString("followSymlinks"));
+            reportCache = BooleanUtils.toBoolean(formData.getString("reportCache"));
+            reportCacheVerifyHash = BooleanUtils.toBoolean(formData.getString("reportCacheVerifyHash"));
+            branchCoverageFlushWindow = NumberUtils.toLong(formData.getString("branchCoverageFlushWindow"),
+                    BranchCoverageStore.DEFAULT_FLUSH_WINDOW_MILLIS);
+            branchCoverageMaxEntries = NumberUtils.toInt(formData.getString("branchCoverageMaxEntries"),
+                    BranchCoverageStore.DEFAULT_MAX_ENTRIES);
+            branchCoverageMaxLoadedEntries = NumberUtils.toInt(formData.getString("branchCoverageMaxLoadedEntries"),
+                    BranchCoverageStore.DEFAULT_MAX_LOADED_ENTRIES);
+            branchCoverageTtlDays = NumberUtils.toInt(formData.getString("branchCoverageTtlDays"), 0);
+            branchCoverageProtectedBranches = StringUtils.trimToNull(formData.getString("branchCoverageProtectedBranches"));
+            targetBranchFallbacks = StringUtils.trimToNull(formData.getString("targetBranchFallbacks"));
+            compareWithMergeBase = BooleanUtils.toBoolean(formData.getString("compareWithMergeBase"));
+            rateLimitMaxWait = NumberUtils.toLong(formData.getString("rateLimitMaxWait"),
+                    RateLimitTracker.DEFAULT_MAX_WAIT_SECONDS);
+            gitHubRequestsPerMinute = NumberUtils.toInt(formData.getString("gitHubRequestsPerMinute"),
+                    GitHubRequestScheduler.DEFAULT_REQUESTS_PER_MINUTE);
+            gitHubMaxConcurrentRequests = NumberUtils.toInt(formData.getString("gitHubMaxConcurrentRequests"),
+                    GitHubRequestScheduler.DEFAULT_MAX_CONCURRENT);
+            ServiceRegistry.getBranchCoverageStore().setFlushWindowMillis(branchCoverageFlushWindow);
+            ServiceRegistry.getBranchCoverageStore().setLimits(branchCoverageMaxEntries,
+                    TimeUnit.DAYS.toMillis(branchCoverageTtlDays), branchCoverageProtectedBranches);
+            ServiceRegistry.getBranchCoverageStore().setMaxLoadedEntries(branchCoverageMaxLoadedEntries);
+            ServiceRegistry.getGitHubRequestScheduler().setLimits(gitHubRequestsPerMinute, gitHubMaxConcurrentRequests);
             save();
             return super.configure(req, formData);
         }
@@ -0,0 +1,22 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+/**
+ * Coverage metrics which could be stored in {@link ReportData}.
+ * Names match JaCoCo <code>counter/@type</code>, Cobertura gives {@link #LINE} and {@link #BRANCH}.
+ */
+public enum CoverageCounter {
+
+    INSTRUCTION, BRANCH, LINE, COMPLEXITY, METHOD, CLASS;
+
+    /**
+     * @return counter with same name ignoring case or <code>null</code> if no such counter
+     */
+    public static CoverageCounter of(String name) {
+        if (name == null) return null;
+        for (CoverageCounter counter : values()) {
+            if (counter.name().equalsIgnoreCase(name)) return counter;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.io.Serializable;
+
+/**
+ * Last snapshots of label coverage of branch in fixed size ring buffer of primitive arrays,
+ * so memory doesn't depend on count of builds. Snapshot <code>0</code> is the newest one by timestamp.
+ * <p>
+ * Main metric of snapshot is selected by counter type of step which recorded it, so snapshot keeps
+ * all counters of {@link ReportData} too and {@link #forCounter(CoverageCounter)} gives history of one counter.
+ * <p>
+ * Not thread safe, {@link BranchCoverageStore} guards it by repository lock and gives copies to readers.
+ */
+public final class CoverageHistory implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int COUNTERS = CoverageCounter.values().length;
+
+    private final long[] timestamps;
+    private final int[] buildNumbers;
+    private final int[] covered;
+    private final int[] totals;
+    // covered and total per counter of snapshot, like in ReportData
+    private final int[] counters;
+    // bit per counter present in snapshot
+    private final int[] counterMasks;
+    // index of next write
+    private int head;
+    private int size;
+
+    public CoverageHistory(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("History capacity should be positive: " + capacity);
+        timestamps = new long[capacity];
+        buildNumbers = new int[capacity];
+        covered = new int[capacity];
+        totals = new int[capacity];
+        counters = new int[capacity * COUNTERS * 2];
+        counterMasks = new int[capacity];
+    }
+
+    private CoverageHistory(CoverageHistory other) {
+        timestamps = other.timestamps.clone();
+        buildNumbers = other.buildNumbers.clone();
+        covered = other.covered.clone();
+        totals = other.totals.clone();
+        counters = other.counters.clone();
+        counterMasks = other.counterMasks.clone();
+        head = other.head;
+        size = other.size;
+    }
+
+    /**
+     * Snapshots are kept in order of timestamp, so snapshot of build which finished after newer one
+     * is put to its place. Overwrite the oldest snapshot when history is full, snapshot older than
+     * all kept ones of full history is dropped.
+     */
+    public void add(long timestamp, int buildNumber, int covered, int total) {
+        add(timestamp, buildNumber, new ReportData(covered, total));
+    }
+
+    /**
+     * Snapshot of main metric and all counters of report data
+     *
+     * @see #add(long, int, int, int)
+     */
+    public void add(long timestamp, int buildNumber, ReportData reportData) {
+        int position = 0;
+        while (position < size && getTimestamp(position) > timestamp) position++;
+        if (position == timestamps.length) return;
+
+        head = (head + 1) % timestamps.length;
+        if (size < timestamps.length) size++;
+        // newer snapshots are moved by one to free place
+        for (int snapshot = 0; snapshot < position; snapshot++) {
+            final int to = index(snapshot);
+            final int from = index(snapshot + 1);
+            timestamps[to] = timestamps[from];
+            buildNumbers[to] = buildNumbers[from];
+            covered[to] = covered[from];
+            totals[to] = totals[from];
+            System.arraycopy(counters, from * COUNTERS * 2, counters, to * COUNTERS * 2, COUNTERS * 2);
+            counterMasks[to] = counterMasks[from];
+        }
+        final int i = index(position);
+        timestamps[i] = timestamp;
+        buildNumbers[i] = buildNumber;
+        covered[i] = reportData.getCovered();
+        totals[i] = reportData.getTotal();
+        counterMasks[i] = 0;
+        for (CoverageCounter counter : CoverageCounter.values()) {
+            final ReportData counterData = reportData.getCounter(counter);
+            if (counterData == null) continue;
+            counters[(i * COUNTERS + counter.ordinal()) * 2] = counterData.getCovered();
+            counters[(i * COUNTERS + counter.ordinal()) * 2 + 1] = counterData.getTotal();
+            counterMasks[i] |= 1 << counter.ordinal();
+        }
+    }
+
+    /**
+     * Main metric of each snapshot is replaced by counter, so rates don't mix counters recorded by steps
+     * with different counter types. Snapshots without counter are skipped, if no snapshot has it main
+     * metric is kept as {@link ReportData#getRate(CoverageCounter)} does for report without counter.
+     *
+     * @return history of counter
+     */
+    public CoverageHistory forCounter(CoverageCounter counter) {
+        boolean present = false;
+        for (int snapshot = 0; snapshot < size && counter != null; snapshot++) {
+            present |= hasCounter(snapshot, counter);
+        }
+        if (!present) return copy();
+
+        final CoverageHistory result = new CoverageHistory(timestamps.length);
+        for (int snapshot = size - 1; snapshot >= 0; snapshot--) {
+            if (!hasCounter(snapshot, counter)) continue;
+            final int i = index(snapshot);
+            final ReportData reportData = new ReportData(counters[(i * COUNTERS + counter.ordinal()) * 2],
+                    counters[(i * COUNTERS + counter.ordinal()) * 2 + 1]);
+            reportData.setCounter(counter, reportData.getCovered(), reportData.getTotal());
+            result.add(timestamps[i], buildNumbers[i], reportData);
+        }
+        return result;
+    }
+
+    public boolean hasCounter(int snapshot, CoverageCounter counter) {
+        return (counterMasks[index(snapshot)] & (1 << counter.ordinal())) != 0;
+    }
+
+    public CoverageHistory copy() {
+        return new CoverageHistory(this);
+    }
+
+    public int getCapacity() {
+        return timestamps.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int index(int snapshot) {
+        if (snapshot < 0 || snapshot >= size) throw new IndexOutOfBoundsException("Snapshot " + snapshot + " of " + size);
+        return (head - 1 - snapshot + timestamps.length) % timestamps.length;
+    }
+
+    public long getTimestamp(int snapshot) {
+        return timestamps[index(snapshot)];
+    }
+
+    public int getBuildNumber(int snapshot) {
+        return buildNumbers[index(snapshot)];
+    }
+
+    public int getCovered(int snapshot) {
+        return covered[index(snapshot)];
+    }
+
+    public int getTotal(int snapshot) {
+        return totals[index(snapshot)];
+    }
+
+    /**
+     * @return rate of snapshot or <code>0</code> if it has no code, unlike {@link ReportData#getRate()} which gives <code>NaN</code>
+     */
+    public float getRate(int snapshot) {
+        final int i = index(snapshot);
+        return totals[i] == 0 ? 0 : covered[i] / (float) totals[i];
+    }
+
+    private int window(int window) {
+        return Math.max(0, Math.min(window, size));
+    }
+
+    /**
+     * Snapshots without code have no rate and are skipped by min, max and average
+     *
+     * @return min rate of last window snapshots or <code>NaN</code> if no one has code
+     */
+    public float getMinRate(int window) {
+        final int count = window(window);
+        float min = Float.NaN;
+        for (int i = 0; i < count; i++) {
+            if (getTotal(i) > 0) min = Float.isNaN(min) ? getRate(i) : Math.min(min, getRate(i));
+        }
+        return min;
+    }
+
+    /**
+     * @return max rate of last window snapshots or <code>NaN</code> if no one has code
+     */
+    public float getMaxRate(int window) {
+        final int count = window(window);
+        float max = Float.NaN;
+        for (int i = 0; i < count; i++) {
+            if (getTotal(i) > 0) max = Float.isNaN(max) ? getRate(i) : Math.max(max, getRate(i));
+        }
+        return max;
+    }
+
+    /**
+     * @return moving average of rate over last window snapshots or <code>NaN</code> if no one has code
+     */
+    public float getAverageRate(int window) {
+        final int count = window(window);
+        double sum = 0;
+        int withCode = 0;
+        for (int i = 0; i < count; i++) {
+            if (getTotal(i) > 0) {
+                sum += getRate(i);
+                withCode++;
+            }
+        }
+        return withCode > 0 ? (float) (sum / withCode) : Float.NaN;
+    }
+
+    @Override
+    public String toString() {
+        return "CoverageHistory{size=" + size + ", capacity=" + timestamps.length + '}';
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.io.IOException;
+
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+
+/**
+ * Hidden page for administrators to watch {@link BranchCoverageStore} and {@link GitHubRequestScheduler}
+ */
+@Extension
+public class CoverageStoreAction implements RootAction {
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return "github-pr-coverage-status";
+    }
+
+    /**
+     * Used by Jenkins Stapler service when get request on URL jenkins_host/getUrlName()/stats
+     *
+     * @param request - request
+     * @param response - response
+     * @throws IOException
+     */
+    @SuppressWarnings("unused")
+    public void doStats(StaplerRequest request, StaplerResponse response) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().write(JSONObject.fromObject(ServiceRegistry.getBranchCoverageStore().getStats()).toString(2));
+    }
+
+    /**
+     * Used by Jenkins Stapler service when get request on URL jenkins_host/getUrlName()/gitHubStats
+     * to watch queue of GitHub API requests
+     */
+    @SuppressWarnings("unused")
+    public void doGitHubStats(StaplerRequest request, StaplerResponse response) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().write(JSONObject.fromObject(ServiceRegistry.getGitHubRequestScheduler().getStats()).toString(2));
+    }
+
+    /**
+     * Used by Jenkins Stapler service when get request on URL jenkins_host/getUrlName()/export
+     * to download all branch coverage as JSON stream
+     */
+    @SuppressWarnings("unused")
+    public void doExport(StaplerRequest request, StaplerResponse response) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=github-pr-coverage-status.json");
+        BranchCoverageJson.write(ServiceRegistry.getBranchCoverageStore(), response.getOutputStream());
+    }
+
+    /**
+     * Used by Jenkins Stapler service when post request on URL jenkins_host/getUrlName()/import
+     * with JSON made by export as body
+     */
+    @SuppressWarnings("unused")
+    @RequirePOST
+    public void doImport(StaplerRequest request, StaplerResponse response) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+
+        final int imported = BranchCoverageJson.read(ServiceRegistry.getBranchCoverageStore(), request.getInputStream());
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().write("{\"imported\": " + imported + "}");
+    }
+
+}
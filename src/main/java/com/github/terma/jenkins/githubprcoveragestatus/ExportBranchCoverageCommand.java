@@ -0,0 +1,27 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import hudson.Extension;
+import hudson.cli.CLICommand;
+import jenkins.model.Jenkins;
+
+/**
+ * <code>java -jar jenkins-cli.jar export-branch-coverage &gt; coverage.json</code>
+ */
+@Extension
+public class ExportBranchCoverageCommand extends CLICommand {
+
+    @Override
+    public String getShortDescription() {
+        return "Writes branch coverage recorded by GitHub PR Coverage Status to stdout as JSON";
+    }
+
+    @Override
+    protected int run() throws Exception {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+
+        BranchCoverageJson.write(ServiceRegistry.getBranchCoverageStore(), stdout);
+        stdout.flush();
+        return 0;
+    }
+
+}
@@ -18,14 +18,19 @@ limitations under the License.
 package com.github.terma.jenkins.githubprcoveragestatus;
 
 import hudson.FilePath;
-import hudson.Util;
+import hudson.model.TaskListener;
 import hudson.remoting.VirtualChannel;
 import jenkins.MasterToSlaveFileCallable;
-import org.apache.tools.ant.DirectoryScanner;
+import org.apache.commons.lang.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SuppressWarnings("WeakerAccess")
 final class GetCoverageCallable extends MasterToSlaveFileCallable<Map<String, ReportData>> implements CoverageRepository {
@@ -34,30 +39,167 @@ final class GetCoverageCallable extends MasterToSlaveFileCallable<Map<String, Re
     private String jacocoCounterType = "";
     private final List<ReportMetaData> reportsMetaDataList;
 
+    /**
+     * Threads used to parse reports on agent, zero or less means number of agent processors
+     */
+    private int parserThreads;
+
+    /**
+     * Globs of workspace directories to skip in addition to {@link ReportFinder#DEFAULT_EXCLUDED_DIRS}
+     */
+    private String reportExcludes;
+    private boolean followSymlinks = true;
+
+    /**
+     * Reports listed by user or by manifest written by build, when set workspace is not scanned
+     */
+    private String reportPaths;
+    private String reportManifest;
+
+    /**
+     * Keep parse results in {@link ReportParseCache#FILE_NAME} in workspace and reuse them for unchanged reports
+     */
+    private boolean reportCache;
+    private boolean reportCacheVerifyHash;
+
+    /**
+     * Build log on agent, could be <code>null</code>
+     */
+    private TaskListener listener;
+
     GetCoverageCallable(final boolean disableSimpleCov, final String jacocoCounterType, List<ReportMetaData> reportsMetaDataList) {
         this.disableSimpleCov = disableSimpleCov;
         this.jacocoCounterType = jacocoCounterType;
         this.reportsMetaDataList = reportsMetaDataList;
     }
 
+    public int getParserThreads() {
+        return parserThreads;
+    }
+
+    public void setParserThreads(int parserThreads) {
+        this.parserThreads = parserThreads;
+    }
+
+    public String getReportExcludes() {
+        return reportExcludes;
+    }
+
+    public void setReportExcludes(String reportExcludes) {
+        this.reportExcludes = reportExcludes;
+    }
+
+    public boolean isFollowSymlinks() {
+        return followSymlinks;
+    }
+
+    public void setFollowSymlinks(boolean followSymlinks) {
+        this.followSymlinks = followSymlinks;
+    }
+
+    public String getReportPaths() {
+        return reportPaths;
+    }
+
+    public void setReportPaths(String reportPaths) {
+        this.reportPaths = reportPaths;
+    }
+
+    public String getReportManifest() {
+        return reportManifest;
+    }
+
+    public void setReportManifest(String reportManifest) {
+        this.reportManifest = reportManifest;
+    }
+
+    public boolean isReportCache() {
+        return reportCache;
+    }
+
+    public void setReportCache(boolean reportCache) {
+        this.reportCache = reportCache;
+    }
+
+    public boolean isReportCacheVerifyHash() {
+        return reportCacheVerifyHash;
+    }
+
+    public void setReportCacheVerifyHash(boolean reportCacheVerifyHash) {
+        this.reportCacheVerifyHash = reportCacheVerifyHash;
+    }
+
+    public void setListener(TaskListener listener) {
+        this.listener = listener;
+    }
+
     /**
-     * Fetch file path to all coverage reports for categorization based on ReportMetaData configuration
+     * Fetch file path to all coverage reports for categorization based on ReportMetaData configuration.
+     * Reports from manifest, if it exists, or from explicit list are taken without workspace scan.
      * @param ws
      * @return coverageFilePaths
      */
-    private List<String> getAllReportPaths(final File ws) {
-        List<String> coverageFilePaths = new ArrayList<String>();
-        DirectoryScanner ds;
-        String[] files, paths = new String[]{"**/cobertura.xml", "**/cobertura-coverage.xml", "**/jacoco.xml", "**/jacocoTestReport.xml"};
-        for (String path: paths) {
-            ds = Util.createFileSet(ws, path).getDirectoryScanner();
-            files = ds.getIncludedFiles();
-            for (String file: files) {
-                coverageFilePaths.add(new File(ds.getBasedir(), file).getAbsolutePath());
+    private List<String> findReportPaths(final File ws) throws IOException {
+        if (StringUtils.isNotBlank(reportManifest)) {
+            File manifest = new File(reportManifest.trim());
+            if (!manifest.isAbsolute()) manifest = new File(ws, reportManifest.trim());
+            if (manifest.isFile()) return ReportFinder.readManifest(ws, manifest);
+        }
+        if (StringUtils.isNotBlank(reportPaths)) return ReportFinder.resolve(ws, reportPaths);
+        return new ReportFinder(reportExcludes, followSymlinks).find(ws);
+    }
+
+    private List<String> getAllReportPaths(final File ws) throws IOException {
+        // same path could be listed twice in manifest
+        return new ArrayList<>(new LinkedHashSet<>(findReportPaths(ws)));
+    }
+
+    /**
+     * Same report found by few paths is parsed and aggregated only once per label. Copy with other label
+     * is kept for its label but added to "repo" only once. Path with label is kept,
+     * so copy in not labeled directory (archive for example) doesn't take coverage from label.
+     * @param coverageFilePaths
+     * @param labelByFilePath
+     * @param notRepoFilePaths - receives kept copies which shouldn't be added to "repo" again
+     * @return coverageFilePaths without duplicates
+     */
+    private List<String> removeDuplicates(final List<String> coverageFilePaths,
+                                          final Map<String, String> labelByFilePath,
+                                          final Set<String> notRepoFilePaths) throws IOException {
+        final List<String> labeledFirst = new ArrayList<>(coverageFilePaths);
+        labeledFirst.sort(Comparator.comparing(path -> !labelByFilePath.containsKey(path)));
+        final Map<String, String> duplicates = ReportFinder.findDuplicates(labeledFirst);
+        if (duplicates.isEmpty()) return coverageFilePaths;
+
+        // kept path by label for each original, duplicates come after original in labeled first order
+        final Map<String, Map<String, String>> keptByLabel = new HashMap<>();
+        final Set<String> skipped = new HashSet<>();
+        for (String filePath : labeledFirst) {
+            final String original = duplicates.get(filePath);
+            if (original == null) continue;
+
+            final Map<String, String> kept = keptByLabel.computeIfAbsent(original, key -> {
+                final Map<String, String> result = new HashMap<>();
+                result.put(labelByFilePath.get(original), original);
+                return result;
+            });
+            final String label = labelByFilePath.get(filePath);
+            if (label != null && !kept.containsKey(label)) {
+                kept.put(label, filePath);
+                notRepoFilePaths.add(filePath);
+            } else {
+                final String same = label != null ? kept.get(label) : original;
+                log("Skip duplicate coverage report " + filePath + ", same as " + same);
+                skipped.add(filePath);
             }
         }
-//        System.out.println("coverageFilePaths: " + coverageFilePaths);
-        return coverageFilePaths;
+        final List<String> result = new ArrayList<>(coverageFilePaths);
+        result.removeAll(skipped);
+        return result;
+    }
+
+    private void log(String message) {
+        if (listener != null) listener.getLogger().println(message);
     }
 
     /**
@@ -89,21 +231,11 @@ final class GetCoverageCallable extends MasterToSlaveFileCallable<Map<String, Re
     private Map<String, String> categorizeFilePathsToLabels(List<String> coverageFilePaths) throws Exception {
         String label;
         Map<String, String> labelByFilePath = new HashMap<>();
+        LabelClassifier labelClassifier = new LabelClassifier(reportsMetaDataList);
 
         for(String filePath: coverageFilePaths) {
-            for(ReportMetaData reportMetaData: reportsMetaDataList) {
-                label = reportMetaData.getLabel();
-                if(reportMetaData.validate(filePath)) {
-                    if(!labelByFilePath.containsKey(filePath)) labelByFilePath.put(filePath, label);
-                    else throw new Exception("Conflicting labels for coverage path: "
-                            + filePath
-                            + " maps to "
-                            + labelByFilePath.get(filePath)
-                            + " and "
-                            + label
-                    );
-                }
-            }
+            label = labelClassifier.classify(filePath);
+            if(label != null) labelByFilePath.put(filePath, label);
         }
 //        System.out.println("labelByFilePath: " + labelByFilePath);
         return labelByFilePath;
@@ -111,24 +243,98 @@ final class GetCoverageCallable extends MasterToSlaveFileCallable<Map<String, Re
 
     /**
      * aggregates coverage based on RepoMetaData configuration under a specific label
+     * <p>
+     * Reports are parsed by {@link #parserThreads} workers, each worker has own parsers and own
+     * accumulator per label. Accumulators are merged in worker order when all reports parsed.
+     * Addition of coverage doesn't depend on order, so result is the same as for one thread.
+     *
      * @param coverageFilePaths
      * @param labelByFilePath
      * @param coverageByLabel
+     * @param notRepoFilePaths - reports added to own label only
+     * @param parseCache - could be <code>null</code>
      * @return coverageByLabel
      */
-    private Map<String, ReportData> generateCoverageData(List<String> coverageFilePaths,
-                                      Map<String, String> labelByFilePath,
-                                      Map<String, ReportData> coverageByLabel) {
+    private Map<String, ReportData> generateCoverageData(final List<String> coverageFilePaths,
+                                      final Map<String, String> labelByFilePath,
+                                      final Set<String> notRepoFilePaths,
+                                      final Map<String, ReportData> coverageByLabel,
+                                      final ReportParseCache parseCache) throws Exception {
+        final int threads = Math.min(coverageFilePaths.size(),
+                parserThreads > 0 ? parserThreads : Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) {
+            return parseReports(coverageFilePaths, new AtomicInteger(), labelByFilePath, notRepoFilePaths,
+                    coverageByLabel, parseCache);
+        }
+
+        final AtomicInteger nextReport = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Map<String, ReportData>>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> parseReports(
+                        coverageFilePaths, nextReport, labelByFilePath, notRepoFilePaths, emptyCoverageByLabel(coverageByLabel), parseCache)));
+            }
+            for (Future<Map<String, ReportData>> worker : workers) {
+                final Map<String, ReportData> workerCoverageByLabel;
+                try {
+                    workerCoverageByLabel = worker.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+                for (Map.Entry<String, ReportData> labelCoverage : workerCoverageByLabel.entrySet()) {
+                    coverageByLabel.get(labelCoverage.getKey()).add(labelCoverage.getValue());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+//        System.out.println("coverageByLabel: " + coverageByLabel);
+        return coverageByLabel;
+    }
+
+    private static Map<String, ReportData> emptyCoverageByLabel(Map<String, ReportData> coverageByLabel) {
+        Map<String, ReportData> result = new HashMap<>();
+        for (String label : coverageByLabel.keySet()) result.put(label, new ReportData());
+        return result;
+    }
+
+    /**
+     * Reports found by scan have known names, but listed ones could have any name,
+     * so their format is taken from root element: <code>coverage</code> for Cobertura, otherwise Jacoco
+     */
+    static boolean isCobertura(String filePath) throws IOException {
+        final String name = new File(filePath).getName();
+        if (ReportFinder.REPORT_FILE_NAMES.contains(name)) return name.startsWith("cobertura");
+        return "coverage".equals(XmlUtils.getRootElement(filePath));
+    }
+
+    /**
+     * Take reports one by one from <code>nextReport</code> till the end of list and add to accumulators
+     */
+    private Map<String, ReportData> parseReports(List<String> coverageFilePaths,
+                                                 AtomicInteger nextReport,
+                                                 Map<String, String> labelByFilePath,
+                                                 Set<String> notRepoFilePaths,
+                                                 Map<String, ReportData> coverageByLabel,
+                                                 ReportParseCache parseCache) throws IOException {
+        final CoberturaParser coberturaParser = new CoberturaParser();
+        final JacocoParser jacocoParser = new JacocoParser(jacocoCounterType);
         ReportData reportData;
-        for(String filePath: coverageFilePaths) {
-            if (filePath.contains("cobertura.xml") || filePath.contains("cobertura-coverage.xml"))
-                reportData = new CoberturaParser().get(filePath);
-            else
-                reportData = new JacocoParser(jacocoCounterType).get(filePath);
+        int index;
+        while ((index = nextReport.getAndIncrement()) < coverageFilePaths.size()) {
+            final String filePath = coverageFilePaths.get(index);
+            reportData = parseCache != null ? parseCache.get(filePath) : null;
+            if (reportData == null) {
+                if (isCobertura(filePath))
+                    reportData = coberturaParser.get(filePath);
+                else
+                    reportData = jacocoParser.get(filePath);
+                if (parseCache != null) parseCache.put(filePath, reportData);
+            }
             if(labelByFilePath.containsKey(filePath)) coverageByLabel.get(labelByFilePath.get(filePath)).add(reportData);
-            coverageByLabel.get("repo").add(reportData);
+            if (!notRepoFilePaths.contains(filePath)) coverageByLabel.get("repo").add(reportData);
         }
-//        System.out.println("coverageByLabel: " + coverageByLabel);
         return coverageByLabel;
     }
 
@@ -147,7 +353,17 @@ final class GetCoverageCallable extends MasterToSlaveFileCallable<Map<String, Re
             List<String> coverageFilePaths = getAllReportPaths(ws);
             Map<String, ReportData> coverageByLabel = initializeCoverageByLabel(coverageFilePaths);
             Map<String, String> labelByFilePath = categorizeFilePathsToLabels(coverageFilePaths);
-            return generateCoverageData(coverageFilePaths, labelByFilePath, coverageByLabel);
+            Set<String> notRepoFilePaths = new HashSet<>();
+            coverageFilePaths = removeDuplicates(coverageFilePaths, labelByFilePath, notRepoFilePaths);
+            ReportParseCache parseCache = reportCache ? new ReportParseCache(new File(ws, ReportParseCache.FILE_NAME),
+                    JacocoParser.toCoverageCounter(jacocoCounterType).name(), reportCacheVerifyHash).load() : null;
+            Map<String, ReportData> coverageData = generateCoverageData(coverageFilePaths, labelByFilePath,
+                    notRepoFilePaths, coverageByLabel, parseCache);
+            if (parseCache != null) {
+                parseCache.save();
+                log("Report parse cache: " + parseCache.getHits() + " hits, " + parseCache.getMisses() + " misses");
+            }
+            return coverageData;
         } catch (Exception e) {
             throw new IOException(e.getMessage());
         }
@@ -0,0 +1,74 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Merge base of workspace <code>HEAD</code> and target branch with its first parent ancestors,
+ * computed by <code>git</code> on agent.
+ * <p>
+ * Target branch is taken as <code>origin/target</code> and if it doesn't exist as local <code>target</code>.
+ * Result is empty if workspace isn't Git repository or <code>git</code> is not available.
+ */
+final class GitAncestorsCallable extends MasterToSlaveFileCallable<List<String>> {
+
+    static final int DEFAULT_MAX_ANCESTORS = 100;
+
+    private static final long serialVersionUID = 1L;
+    private static final File NULL_FILE = new File(File.separatorChar == '\\' ? "NUL" : "/dev/null");
+
+    private final String targetBranch;
+    private final int maxCount;
+
+    GitAncestorsCallable(String targetBranch, int maxCount) {
+        this.targetBranch = targetBranch;
+        this.maxCount = maxCount;
+    }
+
+    /**
+     * @return merge base first, then its ancestors up to max count in total
+     */
+    @Override
+    public List<String> invoke(File ws, VirtualChannel channel) throws IOException, InterruptedException {
+        List<String> mergeBase = git(ws, "merge-base", "HEAD", "origin/" + targetBranch);
+        if (mergeBase.isEmpty()) mergeBase = git(ws, "merge-base", "HEAD", targetBranch);
+        if (mergeBase.isEmpty()) return Collections.emptyList();
+
+        return git(ws, "rev-list", "--first-parent", "--max-count=" + maxCount, mergeBase.get(0));
+    }
+
+    /**
+     * @return output lines or empty list if command failed
+     */
+    private static List<String> git(File ws, String... args) throws InterruptedException {
+        final List<String> command = new ArrayList<>();
+        command.add("git");
+        Collections.addAll(command, args);
+
+        final List<String> lines = new ArrayList<>();
+        try {
+            final Process process = new ProcessBuilder(command).directory(ws)
+                    .redirectError(ProcessBuilder.Redirect.to(NULL_FILE)).start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) lines.add(line.trim());
+                }
+            }
+            if (process.waitFor() != 0) return Collections.emptyList();
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+        return lines;
+    }
+
+}
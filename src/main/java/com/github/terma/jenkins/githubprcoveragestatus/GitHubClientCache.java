@@ -0,0 +1,173 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import jenkins.model.Jenkins;
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import org.kohsuke.github.AbuseLimitHandler;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+import org.kohsuke.github.RateLimitHandler;
+import org.kohsuke.github.extras.okhttp3.OkHttpConnector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Controller wide GitHub clients, one per API URL and credential.
+ * <p>
+ * All clients share one OkHttp connection pool and on-disk HTTP cache in <code>JENKINS_HOME</code>.
+ * Cached responses are revalidated by ETag on each read, so repeated reads are answered by
+ * <code>304 Not Modified</code> which GitHub doesn't count against rate limit.
+ * Repository handles are reused for {@link #REPOSITORY_TTL_MILLIS}.
+ * Each client tracks quota of its credential by {@link RateLimitTracker} and keeps
+ * {@link PullRequestIndex} of each repository.
+ */
+final class GitHubClientCache {
+
+    static final long REPOSITORY_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    static final String CACHE_DIRECTORY_NAME = "caches/github-pr-coverage-status";
+    static final long CACHE_SIZE_BYTES = 20 * 1024 * 1024;
+
+    private static final String GITHUB_API_URL = "https://api.github.com";
+
+    private static GitHubClientCache instance;
+
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+    private final OkHttpClient httpClient;
+
+    GitHubClientCache(OkHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    static synchronized GitHubClientCache getInstance() {
+        if (instance == null) {
+            final File cacheDirectory = new File(Jenkins.getInstance().getRootDir(), CACHE_DIRECTORY_NAME);
+            instance = new GitHubClientCache(new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                    .cache(new Cache(cacheDirectory, CACHE_SIZE_BYTES))
+                    .build());
+        }
+        return instance;
+    }
+
+    /**
+     * Token is kept in key as hash only
+     *
+     * @param apiUrl - GitHub Enterprise API URL or <code>null</code> for github.com
+     * @param token  - personal access token or <code>null</code> for anonymous access
+     */
+    static String getClientKey(String apiUrl, String token) {
+        return (apiUrl != null ? apiUrl : GITHUB_API_URL) + "|" + (token != null ? sha256(token) : "anonymous");
+    }
+
+    private static String sha256(String value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes("UTF-8"));
+            final StringBuilder hex = new StringBuilder();
+            for (byte b : digest) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    Client getClient(final String apiUrl, final String token) throws IOException {
+        final String key = getClientKey(apiUrl, token);
+        final Client client = clients.get(key);
+        if (client != null) return client;
+
+        // new builder shares connection pool and cache
+        final RateLimitTracker rateLimitTracker = new RateLimitTracker();
+        final OkHttpClient clientHttpClient = httpClient.newBuilder()
+                .addNetworkInterceptor(rateLimitTracker)
+                .addNetworkInterceptor(ServiceRegistry.getGitHubRequestScheduler().newInterceptor(key))
+                .build();
+        // limits are handled by RateLimitTracker and GitHubRequestScheduler, don't hold request slot in sleep
+        final GitHubBuilder builder = new GitHubBuilder()
+                .withEndpoint(apiUrl != null ? apiUrl : GITHUB_API_URL)
+                .withConnector(new OkHttpConnector(clientHttpClient))
+                .withRateLimitHandler(RateLimitHandler.FAIL)
+                .withAbuseLimitHandler(AbuseLimitHandler.FAIL);
+        if (token != null) builder.withOAuthToken(token);
+        final Client created = new Client(builder.build(), rateLimitTracker, REPOSITORY_TTL_MILLIS, System::currentTimeMillis);
+        final Client existing = clients.putIfAbsent(key, created);
+        return existing != null ? existing : created;
+    }
+
+    /**
+     * GitHub connection with repository handles reused until TTL
+     */
+    static final class Client {
+
+        private final GitHub gitHub;
+        private final RateLimitTracker rateLimitTracker;
+        private final long repositoryTtlMillis;
+        private final LongSupplier clock;
+        private final Map<String, CachedRepository> repositories = new ConcurrentHashMap<>();
+        private final Map<String, PullRequestIndex> pullRequestIndexes = new ConcurrentHashMap<>();
+
+        Client(GitHub gitHub, RateLimitTracker rateLimitTracker, long repositoryTtlMillis, LongSupplier clock) {
+            this.gitHub = gitHub;
+            this.rateLimitTracker = rateLimitTracker;
+            this.repositoryTtlMillis = repositoryTtlMillis;
+            this.clock = clock;
+        }
+
+        GitHub getGitHub() {
+            return gitHub;
+        }
+
+        RateLimitTracker getRateLimitTracker() {
+            return rateLimitTracker;
+        }
+
+        /**
+         * @param userRepo - <code>owner/repo</code>
+         */
+        PullRequestIndex getPullRequestIndex(String userRepo) {
+            return pullRequestIndexes.computeIfAbsent(userRepo, key -> new PullRequestIndex(clock));
+        }
+
+        /**
+         * @return repository fetched less than TTL ago or <code>null</code>
+         */
+        GHRepository getCachedRepository(String userRepo) {
+            final CachedRepository cached = repositories.get(userRepo);
+            if (cached != null && clock.getAsLong() - cached.fetchedMillis < repositoryTtlMillis) return cached.repository;
+            return null;
+        }
+
+        /**
+         * @param userRepo - <code>owner/repo</code>
+         */
+        GHRepository getRepository(String userRepo) throws IOException {
+            final GHRepository cached = getCachedRepository(userRepo);
+            if (cached != null) return cached;
+
+            final long now = clock.getAsLong();
+            final GHRepository repository = gitHub.getRepository(userRepo);
+            repositories.put(userRepo, new CachedRepository(repository, now));
+            return repository;
+        }
+    }
+
+    private static final class CachedRepository {
+        private final GHRepository repository;
+        private final long fetchedMillis;
+
+        private CachedRepository(GHRepository repository, long fetchedMillis) {
+            this.repository = repository;
+            this.fetchedMillis = fetchedMillis;
+        }
+    }
+
+}
@@ -110,75 +110,90 @@ package com.github.terma.jenkins.githubprcoveragestatus;
 
 import org.kohsuke.github.*;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
 
 public class GitHubPullRequestRepository implements PullRequestRepository {
 
     @Override
     public GHPullRequest getPullRequestFor(PrintStream buildLog, String gitHubUrl, String branch, String sha) throws IOException {
-        for (GHPullRequest pr : getGitHubRepository(buildLog, gitHubUrl).getPullRequests(GHIssueState.OPEN)) {
-            if (pr.getHead().getRef().equals(branch) && pr.getHead().getSha().equals(sha)) {
-                return pr;
-            }
-        }
+        final GitHubClientCache.Client client = getClient(buildLog);
+        final GHRepository repository = getGitHubRepository(buildLog, client, gitHubUrl);
+        final PullRequestIndex index = client.getPullRequestIndex(GitUtils.getUserRepo(gitHubUrl));
+
+        GHPullRequest pullRequest = index.find(branch, sha);
+        if (pullRequest != null) return pullRequest;
+
+        // new pull request or new commit, read pull requests changed since last lookup,
+        // build waiting for refresh of other build holds no request slot, each page is queued on its own
+        pullRequest = schedule(GitHubRequestScheduler.Priority.READ, () -> index.findOrRefresh(repository, branch, sha));
+        buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + "Refreshed index of " + index.size() + " open PRs");
+        if (pullRequest != null) return pullRequest;
         throw new IOException(String.format("No PR found for %s %s @ %s", gitHubUrl, branch, sha));
     }
 
     @Override
     public GHRepository getGitHubRepository(PrintStream buildLog, final String gitHubUrl) throws IOException {
-        GitHub gitHub = getGitHub(buildLog);
+        return getGitHubRepository(buildLog, getClient(buildLog), gitHubUrl);
+    }
 
-        try {
-            buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + "Calling github rate limit....");
-            GHRateLimit ghRateLimit = gitHub.getRateLimit();
-            buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + "Github rate limit: " + ghRateLimit);
-            if (ghRateLimit.remaining == 0) {
-                buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + "Exceeded rate limit for repository");
-                throw new IOException("Exceeded rate limit for repository");
-            }
-        } catch (FileNotFoundException ex) {
-            throw new IOException("Rate limit API not found.");
-        } catch (IOException ex) {
-            throw new IOException("Error while accessing rate limit API", ex);
-        }
+    private static GHRepository getGitHubRepository(
+            PrintStream buildLog, GitHubClientCache.Client client, String gitHubUrl) throws IOException {
+        // quota is known from headers of previous responses, no request to rate limit API
+        final RateLimitTracker rateLimitTracker = client.getRateLimitTracker();
+        buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + "Github rate limit: " + rateLimitTracker);
+        rateLimitTracker.awaitQuota(buildLog,
+                TimeUnit.SECONDS.toMillis(ServiceRegistry.getSettingsRepository().getRateLimitMaxWait()));
 
         final String userRepo = GitUtils.getUserRepo(gitHubUrl);
+        final GHRepository cached = client.getCachedRepository(userRepo);
+        if (cached != null) return cached;
 
         try {
-            return gitHub.getRepository(userRepo);
+            return schedule(GitHubRequestScheduler.Priority.READ, () -> client.getRepository(userRepo));
         } catch (IOException ex) {
             throw new IOException("Could not retrieve GitHub repository named " + userRepo
                     + " (Do you have properly set 'GitHub project' field in job configuration?)", ex);
         }
     }
 
-    private static GitHub getGitHub(PrintStream buildLog) throws IOException {
+    private static GitHubClientCache.Client getClient(PrintStream buildLog) throws IOException {
         final SettingsRepository settingsRepository = ServiceRegistry.getSettingsRepository();
         final String apiUrl = settingsRepository.getGitHubApiUrl();
         final String personalAccessToken = settingsRepository.getPersonalAccessToken();
 
-        if (apiUrl != null) {
-            if (personalAccessToken != null) {
-                return GitHub.connectToEnterprise(apiUrl, personalAccessToken);
-            } else {
-                return GitHub.connectToEnterpriseAnonymously(apiUrl);
-            }
-        } else {
+        if (apiUrl == null) {
             if (personalAccessToken != null) {
                 buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + "Connecting to Github with personalAccessToken");
-                return GitHub.connectUsingOAuth(personalAccessToken);
             } else {
                 buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + "Connecting to Github anonymously");
-                return GitHub.connectAnonymously();
             }
         }
+        return GitHubClientCache.getInstance().getClient(apiUrl, personalAccessToken);
+    }
+
+    /**
+     * Run call with its priority in controller wide queue, each request of call takes budget of configured credential
+     */
+    private static <T> T schedule(GitHubRequestScheduler.Priority priority, GitHubRequestScheduler.Call<T> call) throws IOException {
+        final SettingsRepository settingsRepository = ServiceRegistry.getSettingsRepository();
+        final String credential = GitHubClientCache.getClientKey(
+                settingsRepository.getGitHubApiUrl(), settingsRepository.getPersonalAccessToken());
+        return ServiceRegistry.getGitHubRequestScheduler().execute(credential, priority, call);
+    }
+
+    @Override
+    public String getHeadSha(final GHRepository ghRepository, final int prId) throws IOException {
+        return schedule(GitHubRequestScheduler.Priority.READ, () -> ghRepository.getPullRequest(prId).getHead().getSha());
     }
 
     @Override
     public void comment(final GHRepository ghRepository, final int prId, final String message) throws IOException {
-        ghRepository.getPullRequest(prId).comment(message);
+        schedule(GitHubRequestScheduler.Priority.COMMENT, () -> {
+            ghRepository.getPullRequest(prId).comment(message);
+            return null;
+        });
     }
 
     @Override
@@ -188,6 +203,7 @@ public class GitHubPullRequestRepository implements PullRequestRepository {
             String targetUrl,
             String description
     ) throws IOException {
-        ghRepository.createCommitStatus(sha1, state, targetUrl, description, "test-coverage-plugin");
+        schedule(GitHubRequestScheduler.Priority.STATUS,
+                () -> ghRepository.createCommitStatus(sha1, state, targetUrl, description, "test-coverage-plugin"));
     }
 }
\ No newline at end of file
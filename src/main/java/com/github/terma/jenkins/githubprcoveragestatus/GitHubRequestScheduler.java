@@ -0,0 +1,374 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Controller wide queue for GitHub API requests of all builds, so merge storm doesn't hit secondary rate limit.
+ * <p>
+ * One API call like comment or listing of pull requests could make many HTTP requests, so each HTTP request
+ * is scheduled on its own by {@link #newInterceptor(String)} of client with {@link Priority} of call it's made by.
+ * Request runs in caller thread when:
+ * <ul>
+ * <li>less than {@link #getMaxConcurrent()} requests are running</li>
+ * <li>token bucket of its credential has token, bucket is refilled by {@link #getRequestsPerMinute()}
+ * and holds requests of {@link #BURST_SECONDS}</li>
+ * <li>credential is not in backoff after <code>403</code> or <code>429</code> with <code>Retry-After</code></li>
+ * <li>no ready request with higher {@link Priority} or queued earlier waits</li>
+ * </ul>
+ * Call doesn't hold request slot between its requests, so call which waits for something else like lock
+ * doesn't stop requests of other calls. Call failed because of <code>Retry-After</code> is run again up to
+ * {@link #MAX_RETRIES} times. Zero limit means unlimited.
+ */
+public class GitHubRequestScheduler {
+
+    static final int DEFAULT_REQUESTS_PER_MINUTE = 300;
+    static final int DEFAULT_MAX_CONCURRENT = 10;
+    static final int BURST_SECONDS = 10;
+    static final int MAX_RETRIES = 3;
+    static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    private static GitHubRequestScheduler instance;
+
+    /**
+     * Status checks are published before comments, reads needed by builds to go on are in between
+     */
+    public enum Priority {
+        STATUS, READ, COMMENT
+    }
+
+    /**
+     * GitHub API call
+     */
+    public interface Call<T> {
+        T call() throws IOException;
+    }
+
+    private final LongSupplier clock;
+    // priority of call made by thread, request out of call is read
+    private final ThreadLocal<Priority> callPriority = new ThreadLocal<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final TreeSet<Ticket> queue = new TreeSet<>(
+            Comparator.comparing((Ticket ticket) -> ticket.priority).thenComparingLong(ticket -> ticket.sequence));
+    private final Map<String, Budget> budgets = new HashMap<>();
+
+    // guarded by lock
+    private int requestsPerMinute = DEFAULT_REQUESTS_PER_MINUTE;
+    private int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+    private long sequence;
+    private int running;
+    // metrics, guarded by lock
+    private long calls;
+    private long requests;
+    private long retries;
+    private long backoffs;
+    private long totalQueueWaitMillis;
+    private long maxQueueWaitMillis;
+    private long lastQueueWaitMillis;
+
+    GitHubRequestScheduler(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static synchronized GitHubRequestScheduler getInstance() {
+        if (instance == null) {
+            final GitHubRequestScheduler scheduler = new GitHubRequestScheduler(System::currentTimeMillis);
+            scheduler.setLimits(Configuration.DESCRIPTOR.getGitHubRequestsPerMinute(),
+                    Configuration.DESCRIPTOR.getGitHubMaxConcurrentRequests());
+            instance = scheduler;
+        }
+        return instance;
+    }
+
+    public void setLimits(int requestsPerMinute, int maxConcurrent) {
+        lock.lock();
+        try {
+            this.requestsPerMinute = requestsPerMinute;
+            this.maxConcurrent = maxConcurrent;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getRequestsPerMinute() {
+        lock.lock();
+        try {
+            return requestsPerMinute;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxConcurrent() {
+        lock.lock();
+        try {
+            return maxConcurrent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Run API call with priority for its requests and retry it after backoff
+     *
+     * @param credential - key of credential from {@link GitHubClientCache#getClientKey(String, String)}
+     */
+    public <T> T execute(String credential, Priority priority, Call<T> call) throws IOException {
+        final Priority outer = callPriority.get();
+        callPriority.set(priority);
+        try {
+            countCall();
+            for (int attempt = 0; ; attempt++) {
+                final long started = clock.getAsLong();
+                try {
+                    return call.call();
+                } catch (IOException e) {
+                    if (attempt >= MAX_RETRIES || !isBackoffSince(credential, started)) throw e;
+                    countRetry();
+                }
+            }
+        } finally {
+            if (outer != null) callPriority.set(outer);
+            else callPriority.remove();
+        }
+    }
+
+    /**
+     * Run one HTTP request in queue, it takes request slot and token of credential
+     */
+    <T> T request(String credential, Call<T> request) throws IOException {
+        final Priority priority = callPriority.get();
+        acquire(credential, priority != null ? priority : Priority.READ);
+        try {
+            return request.call();
+        } finally {
+            release();
+        }
+    }
+
+    private void acquire(String credential, Priority priority) throws InterruptedIOException {
+        lock.lock();
+        try {
+            final long queued = clock.getAsLong();
+            final Ticket ticket = new Ticket(credential, priority, sequence++);
+            queue.add(ticket);
+            try {
+                while (true) {
+                    final long now = clock.getAsLong();
+                    Ticket ready = null;
+                    long waitMillis = Long.MAX_VALUE;
+                    if (maxConcurrent <= 0 || running < maxConcurrent) {
+                        for (Ticket candidate : queue) {
+                            final long candidateWait = getBudget(candidate.credential).getWaitMillis(now, requestsPerMinute);
+                            if (candidateWait == 0) {
+                                ready = candidate;
+                                break;
+                            }
+                            waitMillis = Math.min(waitMillis, candidateWait);
+                        }
+                    }
+
+                    if (ready == ticket) {
+                        queue.remove(ticket);
+                        getBudget(credential).take(requestsPerMinute);
+                        running++;
+                        requests++;
+                        lastQueueWaitMillis = now - queued;
+                        totalQueueWaitMillis += lastQueueWaitMillis;
+                        maxQueueWaitMillis = Math.max(maxQueueWaitMillis, lastQueueWaitMillis);
+                        // next ticket could be ready as well
+                        if (!queue.isEmpty()) changed.signalAll();
+                        return;
+                    }
+
+                    // ready ticket wakes up by itself and signals when taken
+                    if (ready != null || waitMillis == Long.MAX_VALUE) {
+                        changed.await();
+                    } else {
+                        changed.await(waitMillis, TimeUnit.MILLISECONDS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                queue.remove(ticket);
+                changed.signalAll();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting in GitHub request queue");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            running--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void countCall() {
+        lock.lock();
+        try {
+            calls++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void countRetry() {
+        lock.lock();
+        try {
+            retries++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Budget getBudget(String credential) {
+        return budgets.computeIfAbsent(credential, key -> new Budget(clock.getAsLong(), requestsPerMinute));
+    }
+
+    /**
+     * Stop calls of credential for given time, longer backoff already set is kept
+     */
+    void backoff(String credential, long millis) {
+        lock.lock();
+        try {
+            final long now = clock.getAsLong();
+            final Budget budget = getBudget(credential);
+            budget.backoffUntilMillis = Math.max(budget.backoffUntilMillis, now + millis);
+            budget.backoffSetMillis = now;
+            backoffs++;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isBackoffSince(String credential, long millis) {
+        lock.lock();
+        try {
+            final Budget budget = budgets.get(credential);
+            return budget != null && budget.backoffSetMillis >= millis;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return network interceptor for client of credential to queue each request and back off on <code>Retry-After</code>
+     */
+    Interceptor newInterceptor(final String credential) {
+        return chain -> {
+            final Response response = request(credential, () -> chain.proceed(chain.request()));
+            if (response.code() == 403 || response.code() == 429) {
+                final long retryAfterSeconds = parseRetryAfter(response.header(RETRY_AFTER_HEADER));
+                if (retryAfterSeconds >= 0) backoff(credential, TimeUnit.SECONDS.toMillis(retryAfterSeconds));
+            }
+            return response;
+        };
+    }
+
+    /**
+     * @return seconds or <code>-1</code> when header is missed or not a number of seconds
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null) return -1;
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return queue length and wait time of calls
+     */
+    public Map<String, Object> getStats() {
+        lock.lock();
+        try {
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("requestsPerMinute", requestsPerMinute);
+            stats.put("maxConcurrent", maxConcurrent);
+            stats.put("queued", queue.size());
+            stats.put("running", running);
+            stats.put("credentials", budgets.size());
+            stats.put("calls", calls);
+            stats.put("requests", requests);
+            stats.put("retries", retries);
+            stats.put("backoffs", backoffs);
+            stats.put("lastQueueWaitMillis", lastQueueWaitMillis);
+            stats.put("maxQueueWaitMillis", maxQueueWaitMillis);
+            stats.put("averageQueueWaitMillis", requests > 0 ? totalQueueWaitMillis / requests : 0);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Ticket {
+        private final String credential;
+        private final Priority priority;
+        private final long sequence;
+
+        private Ticket(String credential, Priority priority, long sequence) {
+            this.credential = credential;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Token bucket and backoff of one credential
+     */
+    private static final class Budget {
+        private double tokens;
+        private long refilledMillis;
+        private long backoffUntilMillis;
+        private long backoffSetMillis = -1;
+
+        private Budget(long now, int requestsPerMinute) {
+            refilledMillis = now;
+            tokens = capacity(requestsPerMinute);
+        }
+
+        private static double capacity(int requestsPerMinute) {
+            return Math.max(1, requestsPerMinute * BURST_SECONDS / 60.0);
+        }
+
+        private void refill(long now, int requestsPerMinute) {
+            tokens = Math.min(capacity(requestsPerMinute), tokens + (now - refilledMillis) * requestsPerMinute / 60000.0);
+            refilledMillis = now;
+        }
+
+        private long getWaitMillis(long now, int requestsPerMinute) {
+            if (backoffUntilMillis > now) return backoffUntilMillis - now;
+            if (requestsPerMinute <= 0) return 0;
+            refill(now, requestsPerMinute);
+            if (tokens >= 1) return 0;
+            return Math.max(1, (long) Math.ceil((1 - tokens) * 60000.0 / requestsPerMinute));
+        }
+
+        private void take(int requestsPerMinute) {
+            if (requestsPerMinute > 0) tokens -= 1;
+        }
+    }
+
+}
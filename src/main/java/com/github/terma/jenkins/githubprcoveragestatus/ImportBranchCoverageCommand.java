@@ -0,0 +1,29 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import hudson.Extension;
+import hudson.cli.CLICommand;
+import jenkins.model.Jenkins;
+
+/**
+ * <code>java -jar jenkins-cli.jar import-branch-coverage &lt; coverage.json</code>
+ * <p>
+ * Stored entry which has coverage of newer build is kept.
+ */
+@Extension
+public class ImportBranchCoverageCommand extends CLICommand {
+
+    @Override
+    public String getShortDescription() {
+        return "Reads branch coverage for GitHub PR Coverage Status from stdin, JSON made by export-branch-coverage";
+    }
+
+    @Override
+    protected int run() throws Exception {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+
+        final int imported = BranchCoverageJson.read(ServiceRegistry.getBranchCoverageStore(), stdin);
+        stdout.println("Imported " + imported + " branch coverage entries");
+        return 0;
+    }
+
+}
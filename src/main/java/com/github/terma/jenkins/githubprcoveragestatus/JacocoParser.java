@@ -17,12 +17,21 @@ limitations under the License.
 */
 package com.github.terma.jenkins.githubprcoveragestatus;
 
-import org.apache.commons.io.FileUtils;
-
-import java.io.File;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /*
 <counter type="INSTRUCTION" missed="1" covered="4"/>
@@ -33,7 +42,25 @@ import java.util.List;
  */
 class JacocoParser implements CoverageReportParser {
 
-    private List<String> coverageCounters = new ArrayList<String>() {{
+    private static final String COUNTER_TAG = "counter";
+    private static final String REPORT_END_TAG = "</report>";
+
+    /**
+     * How many bytes from the end of report are read by tail seek.
+     * JaCoCo writes report level counters as last children of <code>report</code>,
+     * they take less than 1 KB.
+     */
+    static final int TAIL_SIZE = 8 * 1024;
+
+    private static final Pattern COUNTER_ELEMENT_PATTERN = Pattern.compile("^<counter\\s([^<>]*)/>$");
+    private static final Pattern ATTRIBUTE_PATTERN = Pattern.compile("([\\w-]+)\\s*=\\s*([\"'])([^\"']*)\\2");
+
+    /**
+     * Depth of report level counters: <code>report/counter</code>
+     */
+    private static final int ROOT_COUNTER_DEPTH = 2;
+
+    private static final List<String> COVERAGE_COUNTERS = new ArrayList<String>() {{
         add("instruction");
         add("complexity");
         add("method");
@@ -41,56 +68,189 @@ class JacocoParser implements CoverageReportParser {
         add("line");
     }};
 
-    private String coverageCounterType = "";
+    private final String coverageCounterType;
+    private final boolean tailSeek;
 
     public JacocoParser(String coverageCounterType) {
+        this(coverageCounterType, true);
+    }
+
+    /**
+     * @param tailSeek - try to read report level counters from end of file first,
+     *                 if <code>false</code> or tail is not as expected whole report is streamed
+     */
+    JacocoParser(String coverageCounterType, boolean tailSeek) {
         this.coverageCounterType = coverageCounterType;
+        this.tailSeek = tailSeek;
     }
 
-    private float getByXpath(final String filePath, final String content, final String xpath) {
+    private static Float toFloatOrNull(final String value) {
         try {
-            return Float.parseFloat(XmlUtils.findInXml(content, xpath));
+            return value != null ? Float.parseFloat(value) : null;
         } catch (NumberFormatException e) {
-            throw new IllegalArgumentException(
-                    "Strange Jacoco report!\n" +
-                            "File path: " + filePath + "\n" +
-                            "Can't extract float value by XPath: " + xpath + "\n" +
-                            "from:\n" + content);
+            return null;
         }
     }
 
+    private static float toFloat(final String filePath, final String value, final String path) {
+        final Float result = toFloatOrNull(value);
+        if (result != null) return result;
+        throw new IllegalArgumentException(
+                "Strange Jacoco report!\n" +
+                        "File path: " + filePath + "\n" +
+                        "Can't extract float value of " + path);
+    }
+
+    /**
+     * @param missedValues  - <code>missed</code> attribute of report level counter per {@link CoverageCounter#ordinal()}
+     * @param coveredValues - <code>covered</code> attribute of report level counter per {@link CoverageCounter#ordinal()}
+     * @return main coverage by <code>mainCounter</code> plus all other valid counters
+     */
+    private static ReportData toReportData(final String filePath, final CoverageCounter mainCounter,
+                                           final String[] missedValues, final String[] coveredValues) {
+        final float missed = toFloat(filePath, missedValues[mainCounter.ordinal()], getMissedPath(mainCounter));
+        final float covered = toFloat(filePath, coveredValues[mainCounter.ordinal()], getCoveredPath(mainCounter));
+        final ReportData reportData = new ReportData((int) covered, (int) (covered + missed));
+
+        for (CoverageCounter counter : CoverageCounter.values()) {
+            final Float counterMissed = toFloatOrNull(missedValues[counter.ordinal()]);
+            final Float counterCovered = toFloatOrNull(coveredValues[counter.ordinal()]);
+            if (counterMissed != null && counterCovered != null) {
+                reportData.setCounter(counter, counterCovered.intValue(), (int) (counterCovered + counterMissed));
+            }
+        }
+        return reportData;
+    }
+
+    /**
+     * @return counter by name or {@link CoverageCounter#INSTRUCTION} if name is not supported
+     */
+    static CoverageCounter toCoverageCounter(String coverageCounterType) {
+        return CoverageCounter.of(isValidCoverageCounter(coverageCounterType)
+                ? coverageCounterType : COVERAGE_COUNTERS.get(0));
+    }
+
     @Override
     public ReportData get(String jacocoFilePath) {
-        final String content;
-        try {
-            content = FileUtils.readFileToString(new File(jacocoFilePath));
+        final CoverageCounter mainCounter = toCoverageCounter(coverageCounterType);
+
+        if (tailSeek) {
+            final ReportData reportData = getFromTail(jacocoFilePath, mainCounter);
+            if (reportData != null) return reportData;
+        }
+
+        final String[] missedValues = new String[CoverageCounter.values().length];
+        final String[] coveredValues = new String[CoverageCounter.values().length];
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(jacocoFilePath))) {
+            // single pass with constant memory, only root level counters are read
+            final XMLStreamReader reader = XmlUtils.createXmlStreamReader(inputStream);
+            try {
+                int depth = 0;
+                while (reader.hasNext()) {
+                    final int event = reader.next();
+                    if (event == XMLStreamReader.START_ELEMENT) {
+                        depth++;
+                        if (depth == ROOT_COUNTER_DEPTH && COUNTER_TAG.equals(reader.getLocalName())) {
+                            final CoverageCounter counter = CoverageCounter.of(reader.getAttributeValue(null, "type"));
+                            if (counter != null && missedValues[counter.ordinal()] == null
+                                    && coveredValues[counter.ordinal()] == null) {
+                                missedValues[counter.ordinal()] = reader.getAttributeValue(null, "missed");
+                                coveredValues[counter.ordinal()] = reader.getAttributeValue(null, "covered");
+                            }
+                        }
+                    } else if (event == XMLStreamReader.END_ELEMENT) {
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
         } catch (IOException e) {
             throw new IllegalArgumentException(
                     "Can't read Jacoco report by path: " + jacocoFilePath);
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException(
+                    "Strange Jacoco report!\n" +
+                            "File path: " + jacocoFilePath + "\n" +
+                            "Can't parse XML: " + e.getMessage());
         }
 
-        if (!isValidCoverageCounter(coverageCounterType)) {
-            coverageCounterType = coverageCounters.get(0);
+        return toReportData(jacocoFilePath, mainCounter, missedValues, coveredValues);
+    }
+
+    /**
+     * Read last {@link #TAIL_SIZE} bytes of report and walk backward from <code>&lt;/report&gt;</code>
+     * over trailing <code>&lt;counter .../&gt;</code> elements. Only elements which directly precede
+     * closing report tag are taken, so nested (package, class) counters are never used.
+     *
+     * @return coverage or <code>null</code> when tail doesn't look as expected and report should be streamed
+     */
+    private static ReportData getFromTail(final String filePath, final CoverageCounter mainCounter) {
+        final String tail;
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final long position = Math.max(0, size - TAIL_SIZE);
+            final ByteBuffer buffer = ByteBuffer.allocate((int) (size - position));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) break;
+            }
+            buffer.flip();
+            // counters are plain ASCII, single byte charset can't fail on cut multibyte symbol
+            tail = StandardCharsets.ISO_8859_1.decode(buffer).toString();
+        } catch (IOException e) {
+            return null;
         }
 
-        final float missed = getByXpath(jacocoFilePath, content, getMissedXpath(coverageCounterType));
-        final float covered = getByXpath(jacocoFilePath,content, getCoverageXpath(coverageCounterType));
-        final float coverage = covered + missed;
+        int end = tail.lastIndexOf(REPORT_END_TAG);
+        if (end < 0 || !tail.substring(end + REPORT_END_TAG.length()).trim().isEmpty()) return null;
 
-        return new ReportData((int)covered, (int)coverage);
+        final String[] missedValues = new String[CoverageCounter.values().length];
+        final String[] coveredValues = new String[CoverageCounter.values().length];
+        while (true) {
+            final int elementEnd = skipWhitespaceBackward(tail, end);
+            if (elementEnd == 0) return null; // counters could continue before tail
+            if (!tail.startsWith("/>", elementEnd - 2)) {
+                if (tail.charAt(elementEnd - 1) != '>') return null;
+                break;
+            }
+            final int elementStart = tail.lastIndexOf('<', elementEnd - 1);
+            if (elementStart < 0) return null;
+            final Matcher counterMatcher = COUNTER_ELEMENT_PATTERN.matcher(tail.substring(elementStart, elementEnd));
+            if (!counterMatcher.matches()) break;
+
+            String type = null, missed = null, covered = null;
+            final Matcher attributeMatcher = ATTRIBUTE_PATTERN.matcher(counterMatcher.group(1));
+            while (attributeMatcher.find()) {
+                final String name = attributeMatcher.group(1);
+                if ("type".equals(name)) type = attributeMatcher.group(3);
+                else if ("missed".equals(name)) missed = attributeMatcher.group(3);
+                else if ("covered".equals(name)) covered = attributeMatcher.group(3);
+            }
+            // walking backward, so last assignment is first counter in document
+            final CoverageCounter counter = CoverageCounter.of(type);
+            if (counter != null) {
+                missedValues[counter.ordinal()] = missed;
+                coveredValues[counter.ordinal()] = covered;
+            }
+            end = elementStart;
+        }
+
+        // let streaming parser report problem with main counter
+        if (toFloatOrNull(missedValues[mainCounter.ordinal()]) == null
+                || toFloatOrNull(coveredValues[mainCounter.ordinal()]) == null) return null;
+        return toReportData(filePath, mainCounter, missedValues, coveredValues);
+    }
 
-//        if (coverage == 0) {
-//            return 0;
-//        } else {
-//            return covered / (coverage);
-//        }
+    private static int skipWhitespaceBackward(final String string, int index) {
+        while (index > 0 && Character.isWhitespace(string.charAt(index - 1))) index--;
+        return index;
     }
 
-    private boolean isValidCoverageCounter(String coverageCounter) {
+    private static boolean isValidCoverageCounter(String coverageCounter) {
         if (coverageCounter == null) {
             return false;
         }
-        for (String type : coverageCounters) {
+        for (String type : COVERAGE_COUNTERS) {
             if (type.equalsIgnoreCase(coverageCounter)) {
                 return true;
             }
@@ -98,11 +258,11 @@ class JacocoParser implements CoverageReportParser {
         return false;
     }
 
-    private String getMissedXpath(String counterType) {
-        return "/report/counter[@type='" + counterType.toUpperCase() + "']/@missed";
+    private static String getMissedPath(CoverageCounter counter) {
+        return "/report/counter[@type='" + counter + "']/@missed";
     }
 
-    private String getCoverageXpath(String counterType) {
-        return "/report/counter[@type='" + counterType.toUpperCase() + "']/@covered";
+    private static String getCoveredPath(CoverageCounter counter) {
+        return "/report/counter[@type='" + counter + "']/@covered";
     }
 }
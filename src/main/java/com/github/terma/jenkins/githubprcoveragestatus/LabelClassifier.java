@@ -0,0 +1,165 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Route report path to label of {@link ReportMetaData}, same result as
+ * {@link ReportMetaData#validate(String)} for each label but prepared once for all paths.
+ * <p>
+ * Includes made of plain words, like <code>cxstudio-ui|DashboardFrontend</code>, are put in one trie,
+ * so each path is scanned once for all such labels. Other includes and all excludes use patterns
+ * compiled once. Paths with not ASCII symbols are checked by patterns only, as word boundary
+ * of regexp is not trivial there.
+ */
+class LabelClassifier {
+
+    private static final String WORD_BOUNDED_PREFIX = "\\b(";
+    private static final String WORD_BOUNDED_SUFFIX = ")\\b";
+    private static final Pattern LITERAL_ALTERNATIVES = Pattern.compile("[\\w/-]+(\\|[\\w/-]+)*");
+
+    private final List<ReportMetaData> reportsMetaData;
+    private final Pattern[] includes;
+    private final Pattern[] excludes;
+    // include is checked by trie, pattern is used only for not ASCII path
+    private final boolean[] literalIncludes;
+    private final Node literals = new Node();
+
+    LabelClassifier(final List<ReportMetaData> reportsMetaData) {
+        this.reportsMetaData = reportsMetaData;
+        includes = new Pattern[reportsMetaData.size()];
+        excludes = new Pattern[reportsMetaData.size()];
+        literalIncludes = new boolean[reportsMetaData.size()];
+
+        for (int i = 0; i < reportsMetaData.size(); i++) {
+            final ReportMetaData reportMetaData = reportsMetaData.get(i);
+            // validate() treats metadata without includes and excludes as match for everything
+            if (reportMetaData.getIncludes() == null && reportMetaData.getExcludes() == null) continue;
+
+            includes[i] = reportMetaData.getIncludesPattern();
+            excludes[i] = reportMetaData.getExcludesPattern();
+            literalIncludes[i] = addLiterals(i, reportMetaData.getIncludes());
+        }
+    }
+
+    private boolean addLiterals(final int label, final String include) {
+        if (include == null) return false;
+
+        String alternatives = include;
+        boolean wordBounded = false;
+        if (include.startsWith(WORD_BOUNDED_PREFIX) && include.endsWith(WORD_BOUNDED_SUFFIX)
+                && include.length() > WORD_BOUNDED_PREFIX.length() + WORD_BOUNDED_SUFFIX.length()) {
+            alternatives = include.substring(WORD_BOUNDED_PREFIX.length(), include.length() - WORD_BOUNDED_SUFFIX.length());
+            wordBounded = true;
+        }
+        if (!LITERAL_ALTERNATIVES.matcher(alternatives).matches()) return false;
+
+        for (String literal : alternatives.split("\\|")) {
+            Node node = literals;
+            for (int i = 0; i < literal.length(); i++) {
+                Node child = node.children.get(literal.charAt(i));
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(literal.charAt(i), child);
+                }
+                node = child;
+            }
+            node.terminals.add(new Terminal(label, wordBounded));
+        }
+        return true;
+    }
+
+    /**
+     * @return label of report path or <code>null</code> if no one matches
+     * @throws Exception if path matches more than one label
+     */
+    String classify(final String path) throws Exception {
+        final boolean ascii = isAscii(path);
+        final boolean[] literalMatches = ascii ? findLiterals(path) : null;
+
+        String result = null;
+        for (int i = 0; i < reportsMetaData.size(); i++) {
+            if (!matches(i, path, literalMatches)) continue;
+
+            final String label = reportsMetaData.get(i).getLabel();
+            if (result == null) result = label;
+            else throw new Exception("Conflicting labels for coverage path: "
+                    + path
+                    + " maps to "
+                    + result
+                    + " and "
+                    + label
+            );
+        }
+        return result;
+    }
+
+    private boolean matches(final int i, final String path, final boolean[] literalMatches) {
+        final boolean included;
+        if (includes[i] == null) included = true;
+        else if (literalIncludes[i] && literalMatches != null) included = literalMatches[i];
+        else included = includes[i].matcher(path).find();
+
+        return included && (excludes[i] == null || !excludes[i].matcher(path).find());
+    }
+
+    /**
+     * Walk trie from each position of path
+     *
+     * @return flag per label if any of its literals is in path
+     */
+    private boolean[] findLiterals(final String path) {
+        final boolean[] result = new boolean[reportsMetaData.size()];
+        if (literals.children.isEmpty()) return result;
+
+        for (int start = 0; start < path.length(); start++) {
+            Node node = literals;
+            for (int end = start; end < path.length(); end++) {
+                node = node.children.get(path.charAt(end));
+                if (node == null) break;
+                for (Terminal terminal : node.terminals) {
+                    if (!terminal.wordBounded || (isWordBoundary(path, start) && isWordBoundary(path, end + 1))) {
+                        result[terminal.label] = true;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same as <code>\b</code> of {@link Pattern} for ASCII string
+     */
+    private static boolean isWordBoundary(final String path, final int index) {
+        final boolean wordBefore = index > 0 && isWord(path.charAt(index - 1));
+        final boolean wordAfter = index < path.length() && isWord(path.charAt(index));
+        return wordBefore != wordAfter;
+    }
+
+    private static boolean isWord(final char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static boolean isAscii(final String path) {
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) > 127) return false;
+        }
+        return true;
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final List<Terminal> terminals = new ArrayList<>(1);
+    }
+
+    private static final class Terminal {
+        private final int label;
+        private final boolean wordBounded;
+
+        private Terminal(int label, boolean wordBounded) {
+            this.label = label;
+            this.wordBounded = wordBounded;
+        }
+    }
+
+}
@@ -43,6 +43,12 @@ public class PrIdAndUrlUtils {
     public static final String CHANGE_TARGET_PROPERTY = "CHANGE_TARGET";
     public static final String GIT_BRANCH_PROPERTY = "GIT_BRANCH";
     public static final String BRANCH_NAME_PROPERTY = "BRANCH_NAME";
+    public static final String GIT_COMMIT_PROPERTY = "GIT_COMMIT";
+    /**
+     * Head commit of pull request injected by
+     * https://plugins.jenkins.io/ghprb/
+     */
+    public static final String GHPRB_ACTUAL_COMMIT_PROPERTY = "ghprbActualCommit";
 
     private PrIdAndUrlUtils() {
         throw new UnsupportedOperationException("Util class!");
@@ -127,6 +133,42 @@ public class PrIdAndUrlUtils {
                     + " in envs: " + envVars);
     }
 
+    /**
+     * This method is used to get GIT_COMMIT property.
+     * This is SHA of built commit.
+     * @param scmVars
+     * @param build
+     * @param listener
+     * @return SHA or null if not available
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static String getGitCommit(final Map<String, String> scmVars, final Run build, final TaskListener listener) throws IOException, InterruptedException {
+        if (scmVars != null && scmVars.containsKey(GIT_COMMIT_PROPERTY)) return scmVars.get(GIT_COMMIT_PROPERTY);
+        return build.getEnvironment(listener).get(GIT_COMMIT_PROPERTY);
+    }
+
+    /**
+     * Head commit of pull request known without GitHub call.
+     * Pull request discovered by {@link #GIT_COMMIT_PROPERTY} has it as head, otherwise
+     * {@link #GIT_COMMIT_PROPERTY} could be merge commit of pull request and target branch.
+     * @param scmVars
+     * @param build
+     * @param listener
+     * @return SHA or null if it should be taken from pull request
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static String getPullRequestHeadSha(final Map<String, String> scmVars, final Run build, final TaskListener listener) throws IOException, InterruptedException {
+        final EnvVars envVars = build.getEnvironment(listener);
+        final String actualCommit = envVars.get(GHPRB_ACTUAL_COMMIT_PROPERTY);
+        if (actualCommit != null) return actualCommit;
+        if (envVars.get(GIT_PR_ID_ENV_PROPERTY) == null && envVars.get(CHANGE_ID_PROPERTY) == null) {
+            return getGitCommit(scmVars, build, listener);
+        }
+        return null;
+    }
+
     /**
      * This method is used to get BRANCH_NAME property.
      * This may have the same name as a git branch, but might also be called PR-12 or similar
@@ -0,0 +1,26 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import hudson.model.InvisibleAction;
+
+/**
+ * Head commit of pull request resolved once per build, reused by next publish steps of the same build
+ */
+public class PullRequestHeadAction extends InvisibleAction {
+
+    private final int prId;
+    private final String sha;
+
+    public PullRequestHeadAction(int prId, String sha) {
+        this.prId = prId;
+        this.sha = sha;
+    }
+
+    public int getPrId() {
+        return prId;
+    }
+
+    public String getSha() {
+        return sha;
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.kohsuke.github.GHDirection;
+import org.kohsuke.github.GHIssueState;
+import org.kohsuke.github.GHPullRequest;
+import org.kohsuke.github.GHPullRequestQueryBuilder;
+import org.kohsuke.github.GHRepository;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Open pull requests of one repository by head SHA, so multibranch build finds its pull request
+ * without listing all open pull requests each time.
+ * <p>
+ * Index is built by listing open pull requests once, then refreshed incrementally: pull requests in any state
+ * are read newest updated first and reading stops at first one not updated since last refresh, so usually only
+ * first page is read. Closed pull requests are removed. Index is built again each {@link #FULL_REFRESH_MILLIS}.
+ */
+final class PullRequestIndex {
+
+    static final long FULL_REFRESH_MILLIS = TimeUnit.HOURS.toMillis(1);
+    static final int PAGE_SIZE = 100;
+
+    private final LongSupplier clock;
+    private final Map<String, GHPullRequest> byHeadSha = new HashMap<>();
+    private final Map<Integer, String> headShaByNumber = new HashMap<>();
+    // updated time of newest seen pull request, -1 when index is not built
+    private long updatedMillis = -1;
+    private long builtMillis;
+
+    PullRequestIndex(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return pull request with given head or <code>null</code> when index doesn't know it
+     */
+    synchronized GHPullRequest find(String branch, String sha) {
+        final GHPullRequest pr = byHeadSha.get(sha);
+        if (pr != null && pr.getHead().getRef().equals(branch)) return pr;
+        return null;
+    }
+
+    synchronized int size() {
+        return byHeadSha.size();
+    }
+
+    /**
+     * Refresh only if pull request is not found, so builds which waited for refresh of other build
+     * don't read pull requests again
+     *
+     * @return pull request with given head or <code>null</code> when it's not open
+     */
+    synchronized GHPullRequest findOrRefresh(GHRepository repository, String branch, String sha) throws IOException {
+        final GHPullRequest pr = find(branch, sha);
+        if (pr != null) return pr;
+        refresh(repository);
+        return find(branch, sha);
+    }
+
+    /**
+     * Read pull requests changed since last refresh, build index when needed
+     */
+    synchronized void refresh(GHRepository repository) throws IOException {
+        if (isFullRefreshNeeded()) {
+            rebuild(repository.queryPullRequests()
+                    .state(GHIssueState.OPEN)
+                    .list().withPageSize(PAGE_SIZE));
+        } else {
+            update(repository.queryPullRequests()
+                    .state(GHIssueState.ALL)
+                    .sort(GHPullRequestQueryBuilder.Sort.UPDATED)
+                    .direction(GHDirection.DESC)
+                    .list().withPageSize(PAGE_SIZE));
+        }
+    }
+
+    synchronized boolean isFullRefreshNeeded() {
+        return updatedMillis < 0 || clock.getAsLong() - builtMillis >= FULL_REFRESH_MILLIS;
+    }
+
+    /**
+     * @param openPullRequests - all open pull requests of repository
+     */
+    synchronized void rebuild(Iterable<GHPullRequest> openPullRequests) throws IOException {
+        final long now = clock.getAsLong();
+        byHeadSha.clear();
+        headShaByNumber.clear();
+        long newest = 0;
+        for (GHPullRequest pr : openPullRequests) {
+            put(pr);
+            newest = Math.max(newest, getUpdatedMillis(pr));
+        }
+        updatedMillis = newest;
+        builtMillis = now;
+    }
+
+    /**
+     * @param pullRequests - pull requests in any state, newest updated first, only changed ones are read
+     */
+    synchronized void update(Iterable<GHPullRequest> pullRequests) throws IOException {
+        long newest = updatedMillis;
+        for (GHPullRequest pr : pullRequests) {
+            final long updated = getUpdatedMillis(pr);
+            // same second could have changes after last refresh, so equal one is read again
+            if (updated < updatedMillis) break;
+            newest = Math.max(newest, updated);
+            if (pr.getState() == GHIssueState.OPEN) put(pr);
+            else remove(pr.getNumber());
+        }
+        updatedMillis = newest;
+    }
+
+    private void put(GHPullRequest pr) {
+        remove(pr.getNumber());
+        final String sha = pr.getHead().getSha();
+        byHeadSha.put(sha, pr);
+        headShaByNumber.put(pr.getNumber(), sha);
+    }
+
+    private void remove(int number) {
+        final String sha = headShaByNumber.remove(number);
+        if (sha != null) byHeadSha.remove(sha);
+    }
+
+    private static long getUpdatedMillis(GHPullRequest pr) throws IOException {
+        final Date updatedAt = pr.getUpdatedAt();
+        return updatedAt != null ? updatedAt.getTime() : 0;
+    }
+
+}
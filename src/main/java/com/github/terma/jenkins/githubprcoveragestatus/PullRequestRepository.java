@@ -30,6 +30,11 @@ interface PullRequestRepository {
 
     GHRepository getGitHubRepository(PrintStream buildLog, final String gitHubUrl) throws IOException;
 
+    /**
+     * @return SHA of head commit of pull request
+     */
+    String getHeadSha(GHRepository ghRepository, int prId) throws IOException;
+
     void comment(GHRepository ghRepository, int prId, String message) throws IOException;
 
     void createCommitStatus(
@@ -0,0 +1,156 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * GitHub API quota of one credential taken from <code>X-RateLimit-*</code> headers of usual responses,
+ * so quota check before work is local and doesn't cost request to <code>/rate_limit</code>.
+ * <p>
+ * Registered as network interceptor, so responses served by cache don't update it,
+ * revalidated <code>304</code> responses do.
+ */
+final class RateLimitTracker implements Interceptor {
+
+    /**
+     * Requests kept for one build to finish its work, build waits when quota is less
+     */
+    static final int RESERVE = 10;
+    static final long DEFAULT_MAX_WAIT_SECONDS = 60;
+
+    static final String LIMIT_HEADER = "X-RateLimit-Limit";
+    static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    static final String RESET_HEADER = "X-RateLimit-Reset";
+
+    private final LongSupplier clock;
+
+    // -1 till first response with headers
+    private int limit = -1;
+    private int remaining = -1;
+    private long resetMillis;
+
+    RateLimitTracker(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    RateLimitTracker() {
+        this(System::currentTimeMillis);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        final Response response = chain.proceed(chain.request());
+        update(response.header(LIMIT_HEADER), response.header(REMAINING_HEADER), response.header(RESET_HEADER));
+        return response;
+    }
+
+    /**
+     * Responses of one quota window could come in any order, so keep the smallest remaining of the newest window
+     *
+     * @param reset - epoch seconds as GitHub sends
+     */
+    synchronized void update(String limit, String remaining, String reset) {
+        final long newRemaining = toLong(remaining);
+        final long newReset = toLong(reset);
+        if (newRemaining < 0 || newReset < 0) return;
+
+        final long newResetMillis = TimeUnit.SECONDS.toMillis(newReset);
+        if (newResetMillis > resetMillis) {
+            resetMillis = newResetMillis;
+            this.remaining = (int) newRemaining;
+        } else if (newResetMillis == resetMillis) {
+            this.remaining = (int) Math.min(this.remaining, newRemaining);
+        } else {
+            return;
+        }
+        final long newLimit = toLong(limit);
+        if (newLimit >= 0) this.limit = (int) newLimit;
+    }
+
+    private static long toLong(String value) {
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return last known remaining requests or <code>-1</code> if unknown
+     */
+    synchronized int getRemaining() {
+        return remaining;
+    }
+
+    synchronized long getResetMillis() {
+        return resetMillis;
+    }
+
+    /**
+     * @return milliseconds till quota reset when remaining is not more than {@link #RESERVE}, otherwise <code>0</code>
+     */
+    synchronized long getWaitMillis() {
+        if (remaining < 0 || remaining > RESERVE) return 0;
+        return Math.max(0, resetMillis - clock.getAsLong());
+    }
+
+    /**
+     * Wait for quota reset if it comes in max wait
+     *
+     * @throws RateLimitExceededException if reset is later than max wait
+     */
+    void awaitQuota(PrintStream buildLog, long maxWaitMillis) throws IOException {
+        final long waitMillis = getWaitMillis();
+        if (waitMillis == 0) return;
+
+        if (waitMillis > maxWaitMillis) {
+            throw new RateLimitExceededException(getRemaining(), getResetMillis());
+        }
+
+        buildLog.println(CompareCoverageAction.BUILD_LOG_PREFIX + "GitHub rate limit remaining " + getRemaining()
+                + ", waiting " + TimeUnit.MILLISECONDS.toSeconds(waitMillis) + " sec for reset...");
+        try {
+            Thread.sleep(waitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for GitHub rate limit reset");
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RateLimitTracker{limit=" + limit + ", remaining=" + remaining + ", reset=" + new Date(resetMillis) + '}';
+    }
+
+    /**
+     * Quota is too low and reset is too far to wait for it
+     */
+    static final class RateLimitExceededException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long resetMillis;
+
+        RateLimitExceededException(int remaining, long resetMillis) {
+            super("Exceeded rate limit for repository, remaining " + remaining + " till " + new Date(resetMillis));
+            this.resetMillis = resetMillis;
+        }
+
+        long getResetMillis() {
+            return resetMillis;
+        }
+    }
+
+}
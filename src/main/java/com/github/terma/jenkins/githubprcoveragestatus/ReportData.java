@@ -1,11 +1,32 @@
 package com.github.terma.jenkins.githubprcoveragestatus;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
 
+/**
+ * Coverage of report or aggregated coverage of label.
+ * <p>
+ * <code>covered</code> and <code>total</code> is main metric, selected by counter type of step.
+ * In addition report could have all metrics it provides per {@link CoverageCounter},
+ * they are kept in one primitive array as covered and total pair per counter.
+ */
 public class ReportData implements Serializable {
     private int covered;
     private int total;
 
+    /**
+     * Covered and total per {@link CoverageCounter#ordinal()}, <code>null</code> when no counters
+     * (for example data stored by previous version of plugin)
+     */
+    private int[] counters;
+
+    /**
+     * Bit per {@link CoverageCounter#ordinal()} which is present in {@link #counters}
+     */
+    private int counterMask;
+
     public ReportData() {
         this.covered = 0;
         this.total = 0;
@@ -16,21 +37,96 @@ public class ReportData implements Serializable {
         this.total = total;
     }
 
+    public void setCounter(CoverageCounter counter, int covered, int total) {
+        if (counters == null) counters = new int[CoverageCounter.values().length * 2];
+        counters[counter.ordinal() * 2] = covered;
+        counters[counter.ordinal() * 2 + 1] = total;
+        counterMask |= 1 << counter.ordinal();
+    }
+
+    public boolean hasCounter(CoverageCounter counter) {
+        return counter != null && (counterMask & (1 << counter.ordinal())) != 0;
+    }
+
+    /**
+     * @return coverage of counter only or <code>null</code> if counter is not present
+     */
+    public ReportData getCounter(CoverageCounter counter) {
+        if (!hasCounter(counter)) return null;
+        return new ReportData(counters[counter.ordinal() * 2], counters[counter.ordinal() * 2 + 1]);
+    }
+
+    public Map<CoverageCounter, ReportData> getCounters() {
+        Map<CoverageCounter, ReportData> result = new EnumMap<>(CoverageCounter.class);
+        for (CoverageCounter counter : CoverageCounter.values()) {
+            if (hasCounter(counter)) result.put(counter, getCounter(counter));
+        }
+        return result;
+    }
+
+    /**
+     * Aggregated counter is kept only if all added reports have it, otherwise it covers just part of label.
+     * Adding empty data (label without reports) doesn't change anything.
+     */
     public void add(ReportData other) {
+        if (other.isEmpty()) return;
+        if (isEmpty()) {
+            counterMask = other.counterMask;
+            counters = other.counters != null ? other.counters.clone() : null;
+        } else {
+            counterMask &= other.counterMask;
+            if (counters != null && other.counters != null) {
+                for (CoverageCounter counter : CoverageCounter.values()) {
+                    final int i = counter.ordinal() * 2;
+                    if (hasCounter(counter)) {
+                        counters[i] += other.counters[i];
+                        counters[i + 1] += other.counters[i + 1];
+                    } else {
+                        counters[i] = 0;
+                        counters[i + 1] = 0;
+                    }
+                }
+            }
+        }
+        if (counterMask == 0) counters = null;
+
         this.covered += other.covered;
         this.total += other.total;
     }
 
+    private boolean isEmpty() {
+        return counters == null && covered == 0 && total == 0;
+    }
+
+    public int getCovered() {
+        return covered;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
     public float getRate() {
         return  (float) covered / (float) total;
     }
 
+    /**
+     * @return rate of counter if present, otherwise main rate
+     */
+    public float getRate(CoverageCounter counter) {
+        return hasCounter(counter) ? getCounter(counter).getRate() : getRate();
+    }
+
     @Override
     public String toString() {
-        return "ReportData{" +
+        StringBuilder result = new StringBuilder("ReportData{" +
                 "covered=" + covered +
-                ", total=" + total +
-                '}';
+                ", total=" + total);
+        for (Map.Entry<CoverageCounter, ReportData> counter : getCounters().entrySet()) {
+            result.append(", ").append(counter.getKey()).append('=')
+                    .append(counter.getValue().covered).append('/').append(counter.getValue().total);
+        }
+        return result.append('}').toString();
     }
 
     @Override
@@ -41,13 +137,17 @@ public class ReportData implements Serializable {
         ReportData that = (ReportData) o;
 
         if (covered != that.covered) return false;
-        return total == that.total;
+        if (total != that.total) return false;
+        if (counterMask != that.counterMask) return false;
+        return Arrays.equals(counters, that.counters);
     }
 
     @Override
     public int hashCode() {
         int result = covered;
         result = 31 * result + total;
+        result = 31 * result + counterMask;
+        result = 31 * result + Arrays.hashCode(counters);
         return result;
     }
 }
@@ -0,0 +1,203 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Find coverage reports in workspace by one walk over file tree.
+ * <p>
+ * Report is a file with one of {@link #REPORT_FILE_NAMES}. Directories from {@link #DEFAULT_EXCLUDED_DIRS}
+ * and directories which match user excludes are not visited at all.
+ * <p>
+ * User excludes are comma or new line separated globs. Glob without <code>/</code> is matched
+ * against directory name at any level, for example <code>build-cache</code> or <code>tmp*</code>.
+ * Glob with <code>/</code> is matched against directory path relative to workspace,
+ * for example <code>frontend/dist</code> or <code>**&#47;generated</code>.
+ * <p>
+ * When build knows where reports are, {@link #resolve(File, String)} and {@link #readManifest(File, File)}
+ * take them as is without any walk.
+ * <p>
+ * Same report could be found by few paths, for example copy in archived build directory,
+ * {@link #findDuplicates(List)} finds them by size and then by content hash.
+ */
+class ReportFinder {
+
+    static final Set<String> REPORT_FILE_NAMES = new HashSet<>(Arrays.asList(
+            "cobertura.xml", "cobertura-coverage.xml", "jacoco.xml", "jacocoTestReport.xml"));
+
+    static final Set<String> DEFAULT_EXCLUDED_DIRS = new HashSet<>(Arrays.asList(
+            ".git", ".svn", ".hg", "CVS", "node_modules"));
+
+    private final List<PathMatcher> nameExcludes = new ArrayList<>();
+    private final List<PathMatcher> pathExcludes = new ArrayList<>();
+    private final boolean followSymlinks;
+
+    /**
+     * @param excludes       - user globs of directories to skip, could be <code>null</code>
+     * @param followSymlinks - visit directories and reports behind symbolic links
+     */
+    ReportFinder(final String excludes, final boolean followSymlinks) {
+        this.followSymlinks = followSymlinks;
+        if (excludes == null) return;
+
+        final FileSystem fileSystem = FileSystems.getDefault();
+        for (String exclude : excludes.split("[,\\n]")) {
+            exclude = exclude.trim();
+            while (exclude.endsWith("/")) exclude = exclude.substring(0, exclude.length() - 1);
+            if (exclude.isEmpty()) continue;
+
+            if (exclude.contains("/")) pathExcludes.add(fileSystem.getPathMatcher("glob:" + exclude));
+            else nameExcludes.add(fileSystem.getPathMatcher("glob:" + exclude));
+        }
+    }
+
+    /**
+     * @return absolute paths of reports sorted by path
+     */
+    List<String> find(final File ws) throws IOException {
+        final Path root = ws.toPath();
+        final List<String> reportPaths = new ArrayList<>();
+        final Set<FileVisitOption> options = followSymlinks
+                ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : EnumSet.noneOf(FileVisitOption.class);
+
+        Files.walkFileTree(root, options, Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(root)) return FileVisitResult.CONTINUE;
+                return isExcluded(root, dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                // without FOLLOW_LINKS link is visited as file, it could point to directory too
+                if (attrs.isSymbolicLink()) return FileVisitResult.CONTINUE;
+                final Path name = file.getFileName();
+                if (name != null && REPORT_FILE_NAMES.contains(name.toString())) {
+                    reportPaths.add(file.toAbsolutePath().toString());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // symlink loop or not readable directory, same as Ant scanner just ignore it
+                return FileVisitResult.CONTINUE;
+            }
+
+        });
+
+        Collections.sort(reportPaths);
+        return reportPaths;
+    }
+
+    private boolean isExcluded(final Path root, final Path dir) {
+        final Path name = dir.getFileName();
+        if (DEFAULT_EXCLUDED_DIRS.contains(name.toString())) return true;
+        for (PathMatcher matcher : nameExcludes) {
+            if (matcher.matches(name)) return true;
+        }
+        if (!pathExcludes.isEmpty()) {
+            final Path relativePath = root.relativize(dir);
+            for (PathMatcher matcher : pathExcludes) {
+                if (matcher.matches(relativePath)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param paths - comma or new line separated report paths, relative to workspace or absolute
+     * @return absolute paths of reports in the same order
+     * @throws IOException if any report doesn't exist
+     */
+    static List<String> resolve(final File ws, final String paths) throws IOException {
+        return resolve(ws, Arrays.asList(paths.split("[,\\n]")), "report paths");
+    }
+
+    /**
+     * Manifest is text file written by build with report path per line, relative to workspace or absolute.
+     * Empty lines and lines started with <code>#</code> are ignored.
+     *
+     * @return absolute paths of reports in the same order
+     * @throws IOException if any report doesn't exist
+     */
+    static List<String> readManifest(final File ws, final File manifest) throws IOException {
+        return resolve(ws, Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8),
+                "manifest " + manifest.getPath());
+    }
+
+    private static List<String> resolve(final File ws, final List<String> paths, final String source)
+            throws IOException {
+        final List<String> reportPaths = new ArrayList<>();
+        for (String path : paths) {
+            path = path.trim();
+            if (path.isEmpty() || path.startsWith("#")) continue;
+
+            File report = new File(path);
+            if (!report.isAbsolute()) report = new File(ws, path);
+            if (!report.isFile()) {
+                throw new IOException("Coverage report " + path + " from " + source + " doesn't exist");
+            }
+            reportPaths.add(report.getAbsolutePath());
+        }
+        return reportPaths;
+    }
+
+    /**
+     * Only reports which have the same size with other report are read to compare content hash.
+     *
+     * @return duplicate path to path of first report with same content in list order
+     */
+    static Map<String, String> findDuplicates(final List<String> reportPaths) throws IOException {
+        final Map<Long, List<String>> pathsBySize = new LinkedHashMap<>();
+        for (String path : reportPaths) {
+            final long size = Files.size(Paths.get(path));
+            List<String> paths = pathsBySize.get(size);
+            if (paths == null) {
+                paths = new ArrayList<>(1);
+                pathsBySize.put(size, paths);
+            }
+            paths.add(path);
+        }
+
+        final Map<String, String> duplicates = new LinkedHashMap<>();
+        for (List<String> sameSize : pathsBySize.values()) {
+            if (sameSize.size() < 2) continue;
+
+            final Map<ByteBuffer, String> pathByHash = new HashMap<>();
+            for (String path : sameSize) {
+                final ByteBuffer hash = ByteBuffer.wrap(sha256(new File(path)));
+                final String original = pathByHash.get(hash);
+                if (original != null) duplicates.put(path, original);
+                else pathByHash.put(hash, path);
+            }
+        }
+        return duplicates;
+    }
+
+    static byte[] sha256(final File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = new FileInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) > 0) digest.update(buffer, 0, read);
+        }
+        return digest.digest();
+    }
+
+}
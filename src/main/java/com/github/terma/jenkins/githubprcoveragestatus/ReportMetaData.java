@@ -8,6 +8,10 @@ public class ReportMetaData implements Serializable {
     private String includes;
     private String excludes;
 
+    // compiled once on first use, not stored and not sent to agent
+    private transient Pattern includesPattern;
+    private transient Pattern excludesPattern;
+
     public ReportMetaData() {
     }
 
@@ -27,10 +31,20 @@ public class ReportMetaData implements Serializable {
 //        if(includes==null && excludes==null) return false;
         if(includes==null && excludes==null) return true;
 
-        if(excludes==null) return Pattern.compile(includes).matcher(path).find();
-        if(includes==null) return !Pattern.compile(excludes).matcher(path).find();
+        if(excludes==null) return getIncludesPattern().matcher(path).find();
+        if(includes==null) return !getExcludesPattern().matcher(path).find();
+
+        return getIncludesPattern().matcher(path).find() && !getExcludesPattern().matcher(path).find();
+    }
+
+    Pattern getIncludesPattern() {
+        if(includesPattern==null && includes!=null) includesPattern = Pattern.compile(includes);
+        return includesPattern;
+    }
 
-        return Pattern.compile(includes).matcher(path).find() && !Pattern.compile(excludes).matcher(path).find();
+    Pattern getExcludesPattern() {
+        if(excludesPattern==null && excludes!=null) excludesPattern = Pattern.compile(excludes);
+        return excludesPattern;
     }
 
     public String getLabel() {
@@ -52,10 +66,12 @@ public class ReportMetaData implements Serializable {
 
     public void setIncludes(String includes) {
         this.includes = includes;
+        this.includesPattern = null;
     }
 
     public void setExcludes(String excludes) {
         this.excludes = excludes;
+        this.excludesPattern = null;
     }
 
     @Override
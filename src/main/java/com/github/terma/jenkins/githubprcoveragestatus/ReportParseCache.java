@@ -0,0 +1,218 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parse results of reports kept in small file in workspace between builds, so reports of modules
+ * which were not rebuilt are not parsed again.
+ * <p>
+ * Entry is valid while report has the same path, size and modification time, optionally
+ * the same SHA-256 of content. Whole cache is dropped when {@link #PARSER_VERSION} or Jacoco counter
+ * type is changed. Cache keeps last {@link #MAX_ENTRIES} used reports.
+ * <p>
+ * Cache is best effort, any problem with cache file just means reports are parsed.
+ * Methods are thread safe as reports are parsed in parallel.
+ */
+class ReportParseCache {
+
+    static final String FILE_NAME = ".github-pr-coverage-status-cache";
+
+    /**
+     * Increase when parsers give other result for same report
+     */
+    static final int PARSER_VERSION = 1;
+
+    static final int MAX_ENTRIES = 10000;
+
+    private static final int FORMAT_MAGIC = 0x47505243;
+    private static final int HASH_LENGTH = 32;
+
+    private final File file;
+    private final int parserVersion;
+    private final String counterType;
+    private final boolean verifyHash;
+    private final Map<String, CachedReport> entries;
+
+    private int hits;
+    private int misses;
+
+    ReportParseCache(File file, String counterType, boolean verifyHash) {
+        this(file, PARSER_VERSION, counterType, verifyHash, MAX_ENTRIES);
+    }
+
+    ReportParseCache(File file, int parserVersion, String counterType, boolean verifyHash, final int maxEntries) {
+        this.file = file;
+        this.parserVersion = parserVersion;
+        this.counterType = counterType;
+        this.verifyHash = verifyHash;
+        this.entries = new LinkedHashMap<String, CachedReport>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedReport> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Read entries from cache file if it exists and was written by same parser version and counter type
+     */
+    ReportParseCache load() {
+        if (!file.isFile()) return this;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != FORMAT_MAGIC) return this;
+            if (input.readInt() != parserVersion) return this;
+            if (!counterType.equals(input.readUTF())) return this;
+
+            final int size = input.readInt();
+            final Map<String, CachedReport> loaded = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                final String path = input.readUTF();
+                loaded.put(path, CachedReport.read(input));
+            }
+            synchronized (this) {
+                entries.putAll(loaded);
+            }
+        } catch (IOException | RuntimeException e) {
+            // broken cache file, start from empty one
+        }
+        return this;
+    }
+
+    /**
+     * @return cached result or <code>null</code> if report was not parsed before or changed
+     */
+    ReportData get(String path) {
+        final CachedReport entry;
+        synchronized (this) {
+            entry = entries.get(path);
+        }
+        try {
+            if (entry != null && entry.matches(stat(path), verifyHash ? ReportFinder.sha256(new File(path)) : null)) {
+                synchronized (this) {
+                    hits++;
+                }
+                return entry.reportData;
+            }
+        } catch (IOException e) {
+            // report will be parsed and parser will report problem
+        }
+        synchronized (this) {
+            misses++;
+        }
+        return null;
+    }
+
+    void put(String path, ReportData reportData) {
+        try {
+            final CachedReport entry = new CachedReport(stat(path), verifyHash ? ReportFinder.sha256(new File(path)) : null, reportData);
+            synchronized (this) {
+                entries.put(path, entry);
+            }
+        } catch (IOException e) {
+            // not cached, will be parsed next time
+        }
+    }
+
+    /**
+     * Write cache to temporary file and replace cache file by it, so broken write never leaves half of cache
+     */
+    synchronized void save() {
+        final File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                output.writeInt(FORMAT_MAGIC);
+                output.writeInt(parserVersion);
+                output.writeUTF(counterType);
+                output.writeInt(entries.size());
+                for (Map.Entry<String, CachedReport> entry : entries.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    entry.getValue().write(output);
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            tempFile.delete();
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized int getHits() {
+        return hits;
+    }
+
+    synchronized int getMisses() {
+        return misses;
+    }
+
+    private static BasicFileAttributes stat(String path) throws IOException {
+        return Files.readAttributes(new File(path).toPath(), BasicFileAttributes.class);
+    }
+
+    private static final class CachedReport {
+        private final long size;
+        private final long lastModified;
+        private final byte[] hash;
+        private final ReportData reportData;
+
+        private CachedReport(long size, long lastModified, byte[] hash, ReportData reportData) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.reportData = reportData;
+        }
+
+        private CachedReport(BasicFileAttributes attributes, byte[] hash, ReportData reportData) {
+            this(attributes.size(), attributes.lastModifiedTime().toMillis(), hash, reportData);
+        }
+
+        private boolean matches(BasicFileAttributes attributes, byte[] hash) {
+            return size == attributes.size()
+                    && lastModified == attributes.lastModifiedTime().toMillis()
+                    && (hash == null || Arrays.equals(this.hash, hash));
+        }
+
+        private void write(DataOutput output) throws IOException {
+            output.writeLong(size);
+            output.writeLong(lastModified);
+            output.writeBoolean(hash != null);
+            if (hash != null) output.write(hash);
+            output.writeInt(reportData.getCovered());
+            output.writeInt(reportData.getTotal());
+            final Map<CoverageCounter, ReportData> counters = reportData.getCounters();
+            output.writeByte(counters.size());
+            for (Map.Entry<CoverageCounter, ReportData> counter : counters.entrySet()) {
+                output.writeUTF(counter.getKey().name());
+                output.writeInt(counter.getValue().getCovered());
+                output.writeInt(counter.getValue().getTotal());
+            }
+        }
+
+        private static CachedReport read(DataInput input) throws IOException {
+            final long size = input.readLong();
+            final long lastModified = input.readLong();
+            byte[] hash = null;
+            if (input.readBoolean()) {
+                hash = new byte[HASH_LENGTH];
+                input.readFully(hash);
+            }
+            final ReportData reportData = new ReportData(input.readInt(), input.readInt());
+            final int counters = input.readByte();
+            for (int i = 0; i < counters; i++) {
+                final CoverageCounter counter = CoverageCounter.valueOf(input.readUTF());
+                reportData.setCounter(counter, input.readInt(), input.readInt());
+            }
+            return new CachedReport(size, lastModified, hash, reportData);
+        }
+    }
+
+}
@@ -17,6 +17,8 @@ limitations under the License.
 */
 package com.github.terma.jenkins.githubprcoveragestatus;
 
+import hudson.model.TaskListener;
+
 import java.io.PrintStream;
 import java.util.List;
 
@@ -26,6 +28,8 @@ public class ServiceRegistry {
     private static CoverageRepository coverageRepository;
     private static SettingsRepository settingsRepository;
     private static PullRequestRepository pullRequestRepository;
+    private static BranchCoverageStore branchCoverageStore;
+    private static GitHubRequestScheduler gitHubRequestScheduler;
 
     public static TargetCoverageRepository getTargetCoverageRepository(PrintStream buildLog) {
         if (targetCoverageRepository != null) return targetCoverageRepository;
@@ -42,8 +46,36 @@ public class ServiceRegistry {
             final String jacocoCoverageCounter,
             List<ReportMetaData> reportsMetaData
     ) {
-        return coverageRepository != null ? coverageRepository
-                : new GetCoverageCallable(disableSimpleCov, jacocoCoverageCounter, reportsMetaData);
+        return getCoverageRepository(disableSimpleCov, jacocoCoverageCounter, reportsMetaData, null, null, null);
+    }
+
+    /**
+     * @param reportPaths    - explicit reports, could be <code>null</code> to scan workspace
+     * @param reportManifest - file with reports written by build, could be <code>null</code>
+     * @param listener       - build log for messages from agent, could be <code>null</code>
+     */
+    public static CoverageRepository getCoverageRepository(
+            final boolean disableSimpleCov,
+            final String jacocoCoverageCounter,
+            List<ReportMetaData> reportsMetaData,
+            final String reportPaths,
+            final String reportManifest,
+            final TaskListener listener
+    ) {
+        if (coverageRepository != null) return coverageRepository;
+
+        final GetCoverageCallable getCoverageCallable =
+                new GetCoverageCallable(disableSimpleCov, jacocoCoverageCounter, reportsMetaData);
+        final SettingsRepository settings = getSettingsRepository();
+        getCoverageCallable.setParserThreads(settings.getParserThreads());
+        getCoverageCallable.setReportExcludes(settings.getReportExcludes());
+        getCoverageCallable.setFollowSymlinks(settings.isFollowSymlinks());
+        getCoverageCallable.setReportCache(settings.isReportCache());
+        getCoverageCallable.setReportCacheVerifyHash(settings.isReportCacheVerifyHash());
+        getCoverageCallable.setReportPaths(reportPaths);
+        getCoverageCallable.setReportManifest(reportManifest);
+        getCoverageCallable.setListener(listener);
+        return getCoverageCallable;
     }
 
     public static void setCoverageRepository(CoverageRepository coverageRepository) {
@@ -65,4 +97,20 @@ public class ServiceRegistry {
     public static void setPullRequestRepository(PullRequestRepository pullRequestRepository) {
         ServiceRegistry.pullRequestRepository = pullRequestRepository;
     }
+
+    public static BranchCoverageStore getBranchCoverageStore() {
+        return branchCoverageStore != null ? branchCoverageStore : BranchCoverageStore.getInstance();
+    }
+
+    public static void setBranchCoverageStore(BranchCoverageStore branchCoverageStore) {
+        ServiceRegistry.branchCoverageStore = branchCoverageStore;
+    }
+
+    public static GitHubRequestScheduler getGitHubRequestScheduler() {
+        return gitHubRequestScheduler != null ? gitHubRequestScheduler : GitHubRequestScheduler.getInstance();
+    }
+
+    public static void setGitHubRequestScheduler(GitHubRequestScheduler gitHubRequestScheduler) {
+        ServiceRegistry.gitHubRequestScheduler = gitHubRequestScheduler;
+    }
 }
@@ -18,6 +18,44 @@ interface SettingsRepository {
 
     boolean isDisableSimpleCov();
 
+    /**
+     * @return threads to parse coverage reports on agent, zero or less means number of agent processors
+     */
+    int getParserThreads();
+
+    /**
+     * @return comma or new line separated globs of workspace directories to skip when searching reports
+     */
+    String getReportExcludes();
+
+    boolean isFollowSymlinks();
+
+    /**
+     * @return keep parse results of reports in workspace and reuse them for not changed reports
+     */
+    boolean isReportCache();
+
+    /**
+     * @return check content hash of report in addition to size and modification time before reuse of parse result
+     */
+    boolean isReportCacheVerifyHash();
+
+    /**
+     * @return comma or new line separated branches to take target coverage from when target branch has none
+     */
+    String getTargetBranchFallbacks();
+
+    /**
+     * @return compare pull request with coverage recorded for merge base commit or its nearest ancestor
+     * instead of last build of target branch
+     */
+    boolean isCompareWithMergeBase();
+
+    /**
+     * @return seconds to wait for GitHub rate limit reset when quota is low, publishing is skipped if reset is later
+     */
+    long getRateLimitMaxWait();
+
 //    String getSonarUrl();
 //
 //    String getSonarToken();
@@ -17,6 +17,7 @@ limitations under the License.
 */
 package com.github.terma.jenkins.githubprcoveragestatus;
 
+import java.util.List;
 import java.util.Map;
 
 interface TargetCoverageRepository {
@@ -28,4 +29,17 @@ interface TargetCoverageRepository {
      */
     Map<String, ReportData> get(CoverageMetaData coverageMetaData);
 
+    /**
+     * @param commits - merge base of pull request and its ancestors, nearest first
+     * @return coverage of nearest recorded commit or <code>null</code> if none of them recorded
+     */
+    Map<String, ReportData> getByCommits(CoverageMetaData coverageMetaData, List<String> commits);
+
+    /**
+     * @param counter - counter type of build, history of other counter types is not comparable
+     * @return last snapshots of label coverage of target branch or <code>null</code> if not recorded
+     * with same label definition
+     */
+    CoverageHistory getHistory(CoverageMetaData coverageMetaData, String label, CoverageCounter counter);
+
 }
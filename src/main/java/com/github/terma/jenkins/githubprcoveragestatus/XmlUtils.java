@@ -24,15 +24,63 @@ import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathFactory;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 
 public class XmlUtils {
 
+    /**
+     * Shared StAX factory. Configured once, after that creating readers is thread safe.
+     * DTD processing is off so report DTDs (<code>report.dtd</code>, <code>coverage-04.dtd</code>)
+     * are never resolved.
+     */
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Streaming reader over <code>inputStream</code>, caller is responsible to close reader and stream.
+     */
+    public static XMLStreamReader createXmlStreamReader(InputStream inputStream) throws XMLStreamException {
+        return XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+    }
+
+    /**
+     * Stream file till first element, so only prolog and root element are read
+     *
+     * @return local name of root element or <code>null</code> if file isn't XML
+     */
+    public static String getRootElement(String filePath) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(filePath))) {
+            final XMLStreamReader xmlStreamReader = createXmlStreamReader(inputStream);
+            try {
+                while (xmlStreamReader.hasNext()) {
+                    if (xmlStreamReader.next() == XMLStreamReader.START_ELEMENT) return xmlStreamReader.getLocalName();
+                }
+                return null;
+            } finally {
+                xmlStreamReader.close();
+            }
+        } catch (XMLStreamException e) {
+            return null;
+        }
+    }
+
     public static String findInXml(String xml, String xpath) {
         try {
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
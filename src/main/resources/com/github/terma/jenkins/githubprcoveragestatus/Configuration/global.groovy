@@ -32,4 +32,64 @@ f.section(title: descriptor.displayName) {
         f.checkbox()
     }
 
+    f.entry(field: "parserThreads", title: _("Threads to parse coverage reports")) {
+        f.textbox()
+    }
+
+    f.entry(field: "reportExcludes", title: _("Directories to skip when searching coverage reports")) {
+        f.textarea()
+    }
+
+    f.entry(field: "followSymlinks", title: _("Follow symbolic links when searching coverage reports")) {
+        f.checkbox(default: true)
+    }
+
+    f.entry(field: "reportCache", title: _("Cache parsed coverage reports in workspace")) {
+        f.checkbox()
+    }
+
+    f.entry(field: "reportCacheVerifyHash", title: _("Verify cached coverage reports by content hash")) {
+        f.checkbox()
+    }
+
+    f.entry(field: "branchCoverageFlushWindow", title: _("Branch coverage write window, ms")) {
+        f.textbox(default: 1000)
+    }
+
+    f.entry(field: "branchCoverageMaxEntries", title: _("Max branch coverage entries per repository")) {
+        f.textbox(default: 1000)
+    }
+
+    f.entry(field: "branchCoverageMaxLoadedEntries", title: _("Max branch coverage entries in memory")) {
+        f.textbox(default: 100000)
+    }
+
+    f.entry(field: "branchCoverageTtlDays", title: _("Remove branch coverage not updated for, days")) {
+        f.textbox(default: 0)
+    }
+
+    f.entry(field: "branchCoverageProtectedBranches", title: _("Branches which coverage is never removed")) {
+        f.textbox(default: "master, main, release/*")
+    }
+
+    f.entry(field: "targetBranchFallbacks", title: _("Fallback branches for target coverage")) {
+        f.textbox()
+    }
+
+    f.entry(field: "compareWithMergeBase", title: _("Compare with coverage of merge base commit")) {
+        f.checkbox()
+    }
+
+    f.entry(field: "rateLimitMaxWait", title: _("Max wait for GitHub rate limit reset, sec")) {
+        f.textbox(default: 60)
+    }
+
+    f.entry(field: "gitHubRequestsPerMinute", title: _("GitHub API requests per minute")) {
+        f.textbox(default: 300)
+    }
+
+    f.entry(field: "gitHubMaxConcurrentRequests", title: _("Max concurrent GitHub API requests")) {
+        f.textbox(default: 10)
+    }
+
 }
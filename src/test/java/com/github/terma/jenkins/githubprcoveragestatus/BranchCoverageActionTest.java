@@ -17,11 +17,36 @@ limitations under the License.
 */
 package com.github.terma.jenkins.githubprcoveragestatus;
 
+import hudson.EnvVars;
+import hudson.FilePath;
 import hudson.model.Build;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class BranchCoverageActionTest {
 
@@ -32,4 +57,82 @@ public class BranchCoverageActionTest {
         new BranchCoverageAction().perform(build, null, null, null);
     }
 
+    @Rule
+    public TemporaryFolder jenkinsHome = new TemporaryFolder();
+
+    @After
+    public void resetServiceRegistry() {
+        ServiceRegistry.setCoverageRepository(null);
+        ServiceRegistry.setSettingsRepository(null);
+        ServiceRegistry.setBranchCoverageStore(null);
+    }
+
+    private static Map<String, ReportData> coverage(int covered, int total) {
+        Map<String, ReportData> coverage = new HashMap<>();
+        coverage.put("repo", new ReportData(covered, total));
+        return coverage;
+    }
+
+    @Test
+    public void keepCoverageOfLastStartedBuildWhenBuildsFinishConcurrently() throws Exception {
+        final int builds = 200;
+        final BranchCoverageStore store = new BranchCoverageStore(jenkinsHome.getRoot());
+        ServiceRegistry.setBranchCoverageStore(store);
+        ServiceRegistry.setSettingsRepository(mock(SettingsRepository.class));
+        final ThreadLocal<Integer> currentBuild = new ThreadLocal<>();
+        ServiceRegistry.setCoverageRepository(new CoverageRepository() {
+            @Override
+            public Map<String, ReportData> get(FilePath workspace) {
+                return coverage(currentBuild.get(), builds);
+            }
+        });
+
+        final TaskListener listener = mock(TaskListener.class);
+        when(listener.getLogger()).thenReturn(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        final EnvVars envVars = new EnvVars(PrIdAndUrlUtils.GIT_URL_PROPERTY, "https://github.com/terma/test.git",
+                PrIdAndUrlUtils.GIT_BRANCH_PROPERTY, "master");
+        final List<Build> runs = new ArrayList<>();
+        for (int i = 0; i < builds; i++) {
+            Build run = mock(Build.class);
+            when(run.getResult()).thenReturn(Result.SUCCESS);
+            when(run.getEnvironment(any(TaskListener.class))).thenReturn(envVars);
+            when(run.getStartTimeInMillis()).thenReturn(1000L + i);
+            runs.add(run);
+        }
+        // builds finish in shuffled order
+        final List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < builds; i++) order.add(i);
+        Collections.shuffle(order);
+
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            workers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int i = next.getAndIncrement(); i < builds; i = next.getAndIncrement()) {
+                        final int build = order.get(i);
+                        currentBuild.set(build);
+                        new BranchCoverageAction().perform(runs.get(build), null, null, listener);
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<Void> worker : workers) worker.get();
+        executor.shutdown();
+        store.close();
+
+        Assert.assertEquals(coverage(builds - 1, builds),
+                store.get(new CoverageMetaData("https://github.com/terma/test.git", "master", null)));
+    }
+
 }
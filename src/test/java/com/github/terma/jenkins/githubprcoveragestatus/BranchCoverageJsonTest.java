@@ -0,0 +1,124 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class BranchCoverageJsonTest {
+
+    @Rule
+    public TemporaryFolder jenkinsHome = new TemporaryFolder();
+
+    private BranchCoverageStore store(String name) {
+        BranchCoverageStore store = new BranchCoverageStore(new File(jenkinsHome.getRoot(), name));
+        store.setFlushWindowMillis(0);
+        return store;
+    }
+
+    private static Map<String, ReportData> coverage(int covered, int total) {
+        Map<String, ReportData> coverage = new HashMap<>();
+        ReportData reportData = new ReportData(covered, total);
+        reportData.setCounter(CoverageCounter.LINE, covered, total);
+        reportData.setCounter(CoverageCounter.BRANCH, covered + 1, total + 1);
+        coverage.put("repo", reportData);
+        coverage.put("backend", new ReportData(covered, total * 2));
+        return coverage;
+    }
+
+    @Test
+    public void moveAllEntriesBetweenStores() throws IOException {
+        CoverageMetaData master = new CoverageMetaData("https://github.com/terma/first.git", "master",
+                Arrays.asList(new ReportMetaData("backend", "backend", null), new ReportMetaData("web", null, "test")));
+        CoverageMetaData feature = new CoverageMetaData("https://github.com/terma/second.git", "feature", null);
+        BranchCoverageStore source = store("source");
+        source.put(master, coverage(1, 2), null, 100);
+        source.put(feature, coverage(3, 4), null, 200);
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        Assert.assertEquals(2, BranchCoverageJson.write(store("source"), json));
+
+        BranchCoverageStore target = store("target");
+        Assert.assertEquals(2, BranchCoverageJson.read(target, new ByteArrayInputStream(json.toByteArray())));
+
+        BranchCoverageStore loaded = store("target");
+        Assert.assertEquals(coverage(1, 2), loaded.get(master));
+        Assert.assertEquals(coverage(3, 4), loaded.get(feature));
+        Assert.assertEquals(new ReportData(4, 5), loaded.get(feature).get("repo").getCounter(CoverageCounter.BRANCH));
+        // imported entry is not build
+        Assert.assertNull(loaded.getHistory("https://github.com/terma/first.git", "master", "repo", null, null));
+    }
+
+    @Test
+    public void keepNewerStoredEntryOnImport() throws IOException {
+        CoverageMetaData master = new CoverageMetaData("https://github.com/terma/first.git", "master", null);
+        BranchCoverageStore source = store("source");
+        source.put(master, coverage(1, 2), null, 100);
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        BranchCoverageJson.write(source, json);
+
+        BranchCoverageStore target = store("target");
+        target.put(master, coverage(5, 6), null, 200);
+        Object writes = target.getStats().get("repositoryWrites");
+
+        Assert.assertEquals(0, BranchCoverageJson.read(target, new ByteArrayInputStream(json.toByteArray())));
+        Assert.assertEquals(coverage(5, 6), target.get(master));
+        // rejected entry doesn't change repository
+        Assert.assertEquals(writes, target.getStats().get("repositoryWrites"));
+    }
+
+    @Test
+    public void unloadRepositoriesLoadedByImport() throws IOException {
+        CoverageMetaData master = new CoverageMetaData("https://github.com/terma/first.git", "master", null);
+        CoverageMetaData feature = new CoverageMetaData("https://github.com/terma/second.git", "feature", null);
+        BranchCoverageStore source = store("source");
+        source.put(master, coverage(1, 2), null, 100);
+        source.put(feature, coverage(3, 4), null, 200);
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        BranchCoverageJson.write(source, json);
+
+        BranchCoverageStore target = store("target");
+        target.put(new CoverageMetaData("https://github.com/terma/first.git", "develop", null), coverage(5, 6), null, 300);
+
+        Assert.assertEquals(2, BranchCoverageJson.read(target, new ByteArrayInputStream(json.toByteArray())));
+
+        // repository loaded before import stays loaded
+        Assert.assertEquals(1, target.getStats().get("loadedRepositories"));
+        Assert.assertEquals(coverage(1, 2), target.get(master));
+        Assert.assertEquals(coverage(3, 4), target.get(feature));
+    }
+
+    @Test
+    public void writeFilesOncePerBatchOnImport() throws IOException {
+        StringBuilder json = new StringBuilder("{\"formatVersion\": 1, \"unknown\": {\"a\": [1]}, \"entries\": [");
+        for (int i = 0; i < 2500; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"gitUrl\": \"https://github.com/terma/first.git\", \"branch\": \"branch-").append(i)
+                    .append("\", \"version\": 1, \"coverage\": {\"repo\": {\"covered\": 1, \"total\": 2}}}");
+        }
+        json.append("]}");
+        BranchCoverageStore target = store("target");
+        target.setLimits(0, 0, null);
+
+        Assert.assertEquals(2500, BranchCoverageJson.read(target, new ByteArrayInputStream(json.toString().getBytes("UTF-8"))));
+
+        Assert.assertEquals(3L, target.getStats().get("flushes"));
+        BranchCoverageStore loaded = store("target");
+        loaded.setLimits(0, 0, null);
+        Assert.assertEquals(2500, loaded.getRepository("https://github.com/terma/first").size());
+    }
+
+    @Test(expected = IOException.class)
+    public void failOnNewerFormatVersion() throws IOException {
+        BranchCoverageJson.read(store("target"), new ByteArrayInputStream("{\"formatVersion\": 2, \"entries\": []}".getBytes("UTF-8")));
+    }
+
+}
@@ -0,0 +1,498 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BranchCoverageStoreTest {
+
+    @Rule
+    public TemporaryFolder jenkinsHome = new TemporaryFolder();
+
+    private File directory;
+    private List<ReportMetaData> reportMetaDataList = Collections.singletonList(new ReportMetaData("backend", "module", null));
+
+    @Before
+    public void prepare() {
+        directory = new File(jenkinsHome.getRoot(), BranchCoverageStore.DIRECTORY_NAME);
+    }
+
+    private static Map<String, ReportData> coverage(int covered, int total) {
+        Map<String, ReportData> coverage = new HashMap<>();
+        coverage.put("repo", new ReportData(covered, total));
+        return coverage;
+    }
+
+    /**
+     * Store which writes files by build thread
+     */
+    private BranchCoverageStore newStore() {
+        BranchCoverageStore store = new BranchCoverageStore(directory);
+        store.setFlushWindowMillis(0);
+        return store;
+    }
+
+    private BranchCoverageStore loadedStore() {
+        BranchCoverageStore store = newStore();
+        store.load();
+        return store;
+    }
+
+    @Test
+    public void keepCoverageOfEachRepositoryInOwnFile() {
+        BranchCoverageStore store = newStore();
+        CoverageMetaData first = new CoverageMetaData("https://github.com/terma/first.git", "master", reportMetaDataList);
+        CoverageMetaData second = new CoverageMetaData("git@github.com:terma/second.git", "master", reportMetaDataList);
+
+        store.put(first, coverage(1, 2));
+        store.put(second, coverage(3, 4));
+
+        Assert.assertTrue(store.getShardFile("terma/first").isFile());
+        Assert.assertTrue(store.getShardFile("terma/second").isFile());
+        Assert.assertEquals(2, directory.listFiles().length);
+        Assert.assertEquals(coverage(1, 2), store.get(first));
+        Assert.assertEquals(coverage(3, 4), store.get(second));
+    }
+
+    @Test
+    public void loadStoredCoverage() {
+        CoverageMetaData master = new CoverageMetaData("https://github.com/terma/first.git", "master", reportMetaDataList);
+        CoverageMetaData feature = new CoverageMetaData("https://github.com/terma/first.git", "feature", null);
+        BranchCoverageStore store = newStore();
+        store.put(master, coverage(1, 2));
+        store.put(feature, coverage(3, 4));
+
+        BranchCoverageStore loadedStore = loadedStore();
+
+        Assert.assertEquals(2, loadedStore.size());
+        Assert.assertEquals(coverage(1, 2), loadedStore.get(master));
+        Assert.assertEquals(coverage(3, 4), loadedStore.get(feature));
+        Assert.assertNull(loadedStore.get(new CoverageMetaData("https://github.com/terma/first.git", "other", null)));
+        Assert.assertNull(loadedStore.get(new CoverageMetaData("https://github.com/terma/other.git", "master", null)));
+    }
+
+    @Test
+    public void sameRepositoryByAnyUrlHasOneFile() {
+        BranchCoverageStore store = newStore();
+        store.put(new CoverageMetaData("https://github.com/Terma/First.git", "master", null), coverage(1, 2));
+        store.put(new CoverageMetaData("git@github.com:terma/first", "feature", null), coverage(3, 4));
+
+        Assert.assertEquals(1, directory.listFiles().length);
+        Assert.assertEquals(2, store.getRepository("https://github.com/terma/first").size());
+    }
+
+    @Test
+    public void keepNotGitHubUrlAsIs() {
+        BranchCoverageStore store = newStore();
+        store.put(new CoverageMetaData("file:///repos/first", "master", null), coverage(1, 2));
+
+        Assert.assertEquals(coverage(1, 2), loadedStore().get(new CoverageMetaData("file:///repos/first", "master", null)));
+    }
+
+    @Test
+    public void migrateCoverageStoredInGlobalConfiguration() {
+        CoverageMetaData first = new CoverageMetaData("https://github.com/terma/first.git", "master", null);
+        CoverageMetaData second = new CoverageMetaData("https://github.com/terma/second.git", "master", null);
+        BranchCoverageStore store = newStore();
+        store.put(second, coverage(5, 6));
+
+        Map<CoverageMetaData, Map<String, ReportData>> legacy = new HashMap<>();
+        legacy.put(first, coverage(1, 2));
+        legacy.put(second, coverage(3, 4));
+        store.migrate(legacy);
+
+        BranchCoverageStore loadedStore = loadedStore();
+        Assert.assertEquals(coverage(1, 2), loadedStore.get(first));
+        // recorded by new version is newer than migrated one
+        Assert.assertEquals(coverage(5, 6), loadedStore.get(second));
+        Assert.assertEquals(Arrays.asList(first), Arrays.asList(loadedStore.getRepository(first.getGitUrl()).keySet().toArray()));
+    }
+
+    @Test
+    public void readFileOfRepositoryOnFirstLookup() {
+        CoverageMetaData first = new CoverageMetaData("https://github.com/terma/first.git", "master", null);
+        CoverageMetaData second = new CoverageMetaData("https://github.com/terma/second.git", "master", null);
+        BranchCoverageStore store = newStore();
+        store.put(first, coverage(1, 2));
+        store.put(second, coverage(3, 4));
+
+        BranchCoverageStore lazyStore = newStore();
+        Assert.assertEquals(0, lazyStore.getStats().get("loadedRepositories"));
+
+        Assert.assertEquals(coverage(1, 2), lazyStore.get(first));
+        Assert.assertNull(lazyStore.get(new CoverageMetaData("https://github.com/terma/other.git", "master", null)));
+        Assert.assertEquals(1, lazyStore.size());
+        Assert.assertEquals(2, lazyStore.getStats().get("loadedRepositories"));
+        // not existent repository is not written
+        Assert.assertEquals(2, directory.listFiles().length);
+    }
+
+    @Test
+    public void writeBurstOfUpdatesByOneFlush() throws InterruptedException {
+        BranchCoverageStore store = new BranchCoverageStore(directory);
+        store.setFlushWindowMillis(200);
+        for (int i = 0; i < 100; i++) {
+            store.put(new CoverageMetaData("https://github.com/terma/first.git", "branch-" + i, null), coverage(i, 100));
+            store.put(new CoverageMetaData("https://github.com/terma/second.git", "branch-" + i, null), coverage(i, 100));
+        }
+        Assert.assertFalse(directory.exists());
+        Assert.assertEquals(200, store.getStats().get("pendingUpdates"));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!((Long) store.getStats().get("flushes") > 0) && System.currentTimeMillis() < deadline) Thread.sleep(10);
+
+        Assert.assertEquals(1L, store.getStats().get("flushes"));
+        Assert.assertEquals(2L, store.getStats().get("repositoryWrites"));
+        Assert.assertEquals(0, store.getStats().get("pendingUpdates"));
+        Assert.assertEquals(200, loadedStore().size());
+    }
+
+    @Test
+    public void writePendingUpdatesOnClose() {
+        BranchCoverageStore store = new BranchCoverageStore(directory);
+        store.setFlushWindowMillis(60000);
+        store.put(new CoverageMetaData("https://github.com/terma/first.git", "master", null), coverage(1, 2));
+
+        store.close();
+
+        Assert.assertEquals(coverage(1, 2), loadedStore().get(new CoverageMetaData("https://github.com/terma/first.git", "master", null)));
+    }
+
+    @Test
+    public void writeUpdateAfterCloseAtOnce() {
+        BranchCoverageStore store = new BranchCoverageStore(directory);
+        store.setFlushWindowMillis(60000);
+        store.close();
+
+        store.put(new CoverageMetaData("https://github.com/terma/first.git", "master", null), coverage(1, 2));
+
+        Assert.assertEquals(coverage(1, 2), loadedStore().get(new CoverageMetaData("https://github.com/terma/first.git", "master", null)));
+    }
+
+    @Test
+    public void findTargetCoverageByAnyUrlAndLabelOrder() {
+        ReportMetaData backend = new ReportMetaData("backend", "backend", null);
+        ReportMetaData frontend = new ReportMetaData("frontend", "web", null);
+        Map<String, ReportData> coverage = coverage(1, 2);
+        coverage.put("backend", new ReportData(3, 4));
+        coverage.put("frontend", new ReportData(5, 6));
+        BranchCoverageStore store = newStore();
+        store.put(new CoverageMetaData("https://github.com/terma/first.git", "master", Arrays.asList(backend, frontend)), coverage);
+
+        Assert.assertEquals(coverage, loadedStore().find(new CoverageMetaData("git@github.com:Terma/first", "master", Arrays.asList(frontend, backend))));
+        Assert.assertNull(store.find(new CoverageMetaData("git@github.com:terma/first", "feature", null)));
+    }
+
+    @Test
+    public void findOnlyNotChangedLabelsFromLastBuild() {
+        ReportMetaData backend = new ReportMetaData("backend", "backend", null);
+        ReportMetaData frontend = new ReportMetaData("frontend", "web", null);
+        Map<String, ReportData> first = coverage(1, 2);
+        first.put("backend", new ReportData(3, 4));
+        first.put("frontend", new ReportData(5, 6));
+        Map<String, ReportData> second = coverage(7, 8);
+        second.put("backend", new ReportData(9, 10));
+        BranchCoverageStore store = newStore();
+        store.setClock(Clock.fixed(Instant.ofEpochMilli(1000000), ZoneOffset.UTC));
+        store.put(new CoverageMetaData("https://github.com/terma/first.git", "master", Arrays.asList(backend, frontend)), first);
+        store.setClock(Clock.fixed(Instant.ofEpochMilli(2000000), ZoneOffset.UTC));
+        store.put(new CoverageMetaData("https://github.com/terma/first.git", "master", Collections.singletonList(backend)), second);
+
+        Map<String, ReportData> found = store.find(new CoverageMetaData("https://github.com/terma/first.git", "master",
+                Arrays.asList(new ReportMetaData("backend", "server", null), frontend)));
+
+        Map<String, ReportData> expected = coverage(7, 8);
+        expected.put("frontend", new ReportData(5, 6));
+        Assert.assertEquals(expected, found);
+    }
+
+    @Test
+    public void findLabelsOfPreviousBuildWhenLastBuildOfBranchIsEvicted() {
+        ReportMetaData backend = new ReportMetaData("backend", "backend", null);
+        Map<String, ReportData> first = coverage(1, 2);
+        first.put("backend", new ReportData(3, 4));
+        CoverageMetaData firstBuild = new CoverageMetaData("https://github.com/terma/first.git", "feature-1", Collections.singletonList(backend));
+        CoverageMetaData secondBuild = branch("feature-1");
+        BranchCoverageStore store = newStore();
+        store.setLimits(2, 0, "master");
+        store.setClock(Clock.fixed(Instant.ofEpochMilli(1000000), ZoneOffset.UTC));
+        store.put(firstBuild, first);
+        store.setClock(Clock.fixed(Instant.ofEpochMilli(2000000), ZoneOffset.UTC));
+        store.put(secondBuild, coverage(5, 6));
+        Assert.assertEquals(coverage(5, 6), store.find(secondBuild));
+
+        store.setClock(Clock.fixed(Instant.ofEpochMilli(3000000), ZoneOffset.UTC));
+        store.get(firstBuild);
+        store.put(branch("feature-2"), coverage(7, 8));
+
+        Assert.assertEquals(first, store.find(firstBuild));
+        Assert.assertEquals(Arrays.asList("feature-1", "feature-2"), branches(store));
+    }
+
+    @Test
+    public void showClosestBranchesOfRepository() {
+        BranchCoverageStore store = newStore();
+        for (String branch : Arrays.asList("master", "develop", "release/1.0", "release/1.1", "feature-1")) {
+            store.put(branch(branch), coverage(1, 2));
+        }
+
+        Assert.assertEquals(Arrays.asList("release/1.1", "release/1.0"), store.getClosestBranches("git@github.com:terma/first", "release/1.1-fix", 2));
+        Assert.assertEquals(5, store.getClosestBranches("git@github.com:terma/first", "other", 10).size());
+        Assert.assertEquals(Collections.emptyList(), store.getClosestBranches("git@github.com:terma/second", "master", 10));
+    }
+
+    @Test
+    public void findCoverageOfNearestRecordedCommit() {
+        ReportMetaData backend = new ReportMetaData("backend", "backend", null);
+        BranchCoverageStore store = newStore();
+        store.setMaxCommits(2);
+        store.put(new CoverageMetaData("https://github.com/terma/first.git", "master", Collections.singletonList(backend)), coverage(1, 2), "sha-1", 1);
+        store.put(branch("master"), coverage(3, 4), "sha-2", 2);
+        store.put(branch("master"), coverage(5, 6), "sha-3", 3);
+        store.put(branch("master"), coverage(7, 8), "sha-4", 4);
+
+        CoverageMetaData target = new CoverageMetaData("git@github.com:terma/first", "master", Collections.singletonList(backend));
+        BranchCoverageStore.CommitCoverage found = loadedStore().findByCommits(target, Arrays.asList("sha-5", "sha-3", "sha-4"));
+
+        Assert.assertEquals("sha-3", found.getCommit());
+        Assert.assertEquals(coverage(5, 6), found.getCoverage());
+        // oldest commits are removed above limit
+        Assert.assertNull(store.findByCommits(target, Arrays.asList("sha-1", "sha-2")));
+        Assert.assertEquals(2, store.getStats().get("commits"));
+    }
+
+    @Test
+    public void keepCoverageOfNewerBuildWhenOlderFinishesLater() {
+        BranchCoverageStore store = newStore();
+        Assert.assertTrue(store.put(branch("master"), coverage(1, 2), "sha-2", 2000));
+        Assert.assertFalse(store.put(branch("master"), coverage(3, 4), "sha-1", 1000));
+
+        Assert.assertEquals(coverage(1, 2), loadedStore().get(branch("master")));
+        Assert.assertEquals(coverage(3, 4), store.findByCommits(branch("master"), Collections.singletonList("sha-1")).getCoverage());
+        Assert.assertEquals(1L, store.getStats().get("staleWrites"));
+    }
+
+    @Test
+    public void newestBuildWinsUnderConcurrentUpdates() throws Exception {
+        final BranchCoverageStore store = new BranchCoverageStore(directory);
+        store.setFlushWindowMillis(5);
+        final int builds = 2000;
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            workers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int build = next.getAndIncrement(); build < builds; build = next.getAndIncrement()) {
+                        // builds finish in shuffled order
+                        int version = (build * 7919) % builds;
+                        store.put(branch("master"), coverage(version, builds), null, version);
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) worker.get();
+        executor.shutdown();
+        store.close();
+
+        Assert.assertEquals(coverage(builds - 1, builds), store.get(branch("master")));
+        Assert.assertEquals(coverage(builds - 1, builds), loadedStore().get(branch("master")));
+    }
+
+    @Test
+    public void keepBoundedHistoryOfBranchUntilBranchIsRemoved() {
+        BranchCoverageStore store = newStore();
+        store.setHistorySize(3);
+        store.setLimits(2, 0, "master");
+        for (int build = 1; build <= 5; build++) {
+            store.put(branch("master"), coverage(build, 10), null, build, build);
+        }
+        store.setClock(Clock.fixed(Instant.ofEpochMilli(1000), ZoneOffset.UTC));
+        store.put(branch("feature"), coverage(1, 10), null, 1, 1);
+
+        CoverageHistory history = loadedStore().getHistory("git@github.com:terma/first", "master", "repo", null, null);
+        Assert.assertEquals(3, history.size());
+        Assert.assertEquals(5, history.getBuildNumber(0));
+        Assert.assertEquals(0.4f, history.getAverageRate(3), 0.0001);
+
+        // feature is evicted by limit
+        store.setClock(Clock.fixed(Instant.ofEpochMilli(2000), ZoneOffset.UTC));
+        store.put(branch("feature-2"), coverage(1, 10), null, 2, 2);
+        Assert.assertNull(store.getHistory("git@github.com:terma/first", "feature", "repo", null, null));
+        Assert.assertEquals(1, store.getHistory("git@github.com:terma/first", "feature-2", "repo", null, null).size());
+    }
+
+    @Test
+    public void keepHistoryOfEachCounterAndLabelDefinition() {
+        ReportMetaData backend = new ReportMetaData("backend", "backend", null);
+        CoverageMetaData master = new CoverageMetaData("https://github.com/terma/first.git", "master", Collections.singletonList(backend));
+        BranchCoverageStore store = newStore();
+        for (int build = 1; build <= 2; build++) {
+            // main metric is instruction
+            ReportData reportData = new ReportData(build, 10);
+            reportData.setCounter(CoverageCounter.INSTRUCTION, build, 10);
+            reportData.setCounter(CoverageCounter.LINE, build * 3, 10);
+            store.put(master, Collections.singletonMap("backend", reportData), null, build, build);
+        }
+
+        Assert.assertEquals(0.45f, store.getHistory("https://github.com/terma/first.git", "master", "backend", backend,
+                CoverageCounter.LINE).getAverageRate(2), 0.0001);
+        Assert.assertEquals(0.15f, store.getHistory("https://github.com/terma/first.git", "master", "backend", backend,
+                CoverageCounter.INSTRUCTION).getAverageRate(2), 0.0001);
+
+        // history of other definition is not comparable
+        ReportMetaData changed = new ReportMetaData("backend", "server", null);
+        Assert.assertNull(store.getHistory("https://github.com/terma/first.git", "master", "backend", changed, CoverageCounter.LINE));
+        store.put(new CoverageMetaData("https://github.com/terma/first.git", "master", Collections.singletonList(changed)),
+                Collections.singletonMap("backend", new ReportData(9, 10)), null, 3, 3);
+        Assert.assertNull(store.getHistory("https://github.com/terma/first.git", "master", "backend", backend, CoverageCounter.LINE));
+        CoverageHistory history = store.getHistory("https://github.com/terma/first.git", "master", "backend", changed, CoverageCounter.LINE);
+        Assert.assertEquals(1, history.size());
+        Assert.assertEquals(0.9f, history.getAverageRate(2), 0.0001);
+    }
+
+    private static CoverageMetaData branch(String branch) {
+        return new CoverageMetaData("https://github.com/terma/first.git", branch, null);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedBranchesAboveLimit() {
+        BranchCoverageStore store = newStore();
+        store.setLimits(4, 0, "master, release/*");
+        Clock start = Clock.fixed(Instant.ofEpochMilli(1000000), ZoneOffset.UTC);
+        store.setClock(start);
+        store.put(branch("master"), coverage(1, 2));
+        store.put(branch("release/1.0"), coverage(1, 2));
+        store.put(branch("feature-1"), coverage(1, 2));
+        store.setClock(Clock.offset(start, Duration.ofSeconds(1)));
+        store.put(branch("feature-2"), coverage(1, 2));
+        store.put(branch("feature-3"), coverage(1, 2));
+        store.setClock(Clock.offset(start, Duration.ofSeconds(2)));
+        Assert.assertNotNull(store.get(branch("feature-2")));
+        store.put(branch("feature-4"), coverage(1, 2));
+
+        Assert.assertEquals(Arrays.asList("feature-2", "feature-4", "master", "release/1.0"), branches(loadedStore()));
+        Assert.assertEquals(2L, store.getStats().get("evictions"));
+    }
+
+    @Test
+    public void expireNotProtectedBranchesNotWrittenLongerThanTtl() {
+        BranchCoverageStore store = newStore();
+        store.setLimits(0, 1000, "master, release/**");
+        Clock start = Clock.fixed(Instant.ofEpochMilli(1000000), ZoneOffset.UTC);
+        store.setClock(start);
+        store.put(branch("master"), coverage(1, 2));
+        store.put(branch("release/1.0/hotfix"), coverage(1, 2));
+        store.put(branch("feature-1"), coverage(1, 2));
+        store.put(branch("feature-2"), coverage(1, 2));
+
+        store.setClock(Clock.offset(start, Duration.ofSeconds(2)));
+        Assert.assertNull(store.get(branch("feature-1")));
+        store.put(branch("feature-3"), coverage(1, 2));
+
+        Assert.assertEquals(Arrays.asList("feature-3", "master", "release/1.0/hotfix"), branches(loadedStore()));
+        Assert.assertEquals(2L, store.getStats().get("expirations"));
+    }
+
+    @Test
+    public void matchProtectedBranchGlobs() {
+        Assert.assertTrue(BranchCoverageStore.toPattern("master, release/*").matcher("release/1.0").matches());
+        Assert.assertFalse(BranchCoverageStore.toPattern("master, release/*").matcher("release/1.0/fix").matches());
+        Assert.assertTrue(BranchCoverageStore.toPattern("master\nrelease/**").matcher("release/1.0/fix").matches());
+        Assert.assertFalse(BranchCoverageStore.toPattern("master").matcher("master-old").matches());
+        Assert.assertTrue(BranchCoverageStore.toPattern("v1.?").matcher("v1.2").matches());
+        Assert.assertFalse(BranchCoverageStore.toPattern("v1.?").matcher("v102").matches());
+        Assert.assertNull(BranchCoverageStore.toPattern(" , "));
+    }
+
+    @Test
+    public void unloadLeastRecentlyUsedRepositoriesAboveLoadedLimit() {
+        BranchCoverageStore store = newStore();
+        store.setMaxLoadedEntries(3);
+        Clock start = Clock.fixed(Instant.ofEpochMilli(1000000), ZoneOffset.UTC);
+        for (int i = 0; i < 3; i++) {
+            store.setClock(Clock.offset(start, Duration.ofSeconds(i)));
+            store.put(new CoverageMetaData("https://github.com/terma/repo-" + i, "master", null), coverage(i, 10));
+            store.put(new CoverageMetaData("https://github.com/terma/repo-" + i, "develop", null), coverage(i, 10));
+        }
+
+        Assert.assertEquals(1, store.getStats().get("loadedRepositories"));
+        Assert.assertEquals(2L, store.getStats().get("unloadedRepositories"));
+        // unloaded repository is read again
+        Assert.assertEquals(coverage(0, 10), store.get(new CoverageMetaData("https://github.com/terma/repo-0", "master", null)));
+        Assert.assertEquals(2, store.getStats().get("entries"));
+    }
+
+    @Test
+    public void unloadIdleRepositoriesBySweep() {
+        BranchCoverageStore store = newStore();
+        store.setIdleMillis(1000);
+        Clock start = Clock.fixed(Instant.ofEpochMilli(1000000), ZoneOffset.UTC);
+        store.setClock(start);
+        store.put(branch("master"), coverage(1, 2));
+        store.put(new CoverageMetaData("https://github.com/terma/second", "master", null), coverage(3, 4));
+
+        store.setClock(Clock.offset(start, Duration.ofSeconds(2)));
+        store.get(branch("master"));
+        store.sweep();
+
+        Assert.assertEquals(1, store.getStats().get("loadedRepositories"));
+        Assert.assertEquals(2L, store.getStats().get("storedEntries"));
+        Assert.assertEquals(2, store.getStats().get("storedRepositories"));
+        Assert.assertEquals(coverage(3, 4), store.get(new CoverageMetaData("https://github.com/terma/second", "master", null)));
+    }
+
+    @Test
+    public void expireEntriesOfNotLoadedRepositoryBySweep() {
+        Clock start = Clock.fixed(Instant.ofEpochMilli(1000000), ZoneOffset.UTC);
+        BranchCoverageStore writer = newStore();
+        writer.setClock(start);
+        writer.put(branch("master"), coverage(1, 2));
+        writer.put(branch("feature"), coverage(1, 2));
+
+        BranchCoverageStore store = newStore();
+        store.setLimits(0, 1000, "master");
+        store.setClock(Clock.offset(start, Duration.ofSeconds(2)));
+        store.sweep();
+
+        Assert.assertEquals(0, store.getStats().get("loadedRepositories"));
+        Assert.assertEquals(1L, store.getStats().get("expirations"));
+        Assert.assertEquals(1L, store.getStats().get("storedEntries"));
+        Assert.assertEquals(Collections.singletonList("master"), branches(newStore()));
+    }
+
+    private static List<String> branches(BranchCoverageStore store) {
+        List<String> branches = new ArrayList<>();
+        for (CoverageMetaData coverageMetaData : store.getRepository("https://github.com/terma/first").keySet()) {
+            branches.add(coverageMetaData.getGitBranch());
+        }
+        Collections.sort(branches);
+        return branches;
+    }
+
+}
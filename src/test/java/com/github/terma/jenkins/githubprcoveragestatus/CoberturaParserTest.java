@@ -17,19 +17,41 @@ limitations under the License.
 */
 package com.github.terma.jenkins.githubprcoveragestatus;
 
+import com.sun.management.UnixOperatingSystemMXBean;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
 
 public class CoberturaParserTest {
 
+    /**
+     * Main coverage of report without counters
+     */
+    private static ReportData coverage(ReportData reportData) {
+        return new ReportData(reportData.getCovered(), reportData.getTotal());
+    }
+
     @Test
     public void extractCoverageFromCoberturaReportAsLineRatePlusBranchRateDivByTwo() throws IOException {
         String filePath = CoberturaParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura.xml").getFile();
 
-        Assert.assertEquals(new ReportData(32, 36), new CoberturaParser().get(filePath));
+        Assert.assertEquals(new ReportData(32, 36), coverage(new CoberturaParser().get(filePath)));
+    }
+
+    @Test
+    public void extractLinesAsMainCoverageAndBranchesAsCounter() throws IOException {
+        String filePath = CoberturaParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura.xml").getFile();
+
+        ReportData expected = new ReportData(32, 36);
+        expected.setCounter(CoverageCounter.LINE, 32, 36);
+        expected.setCounter(CoverageCounter.BRANCH, 6, 6);
+        Assert.assertEquals(expected, new CoberturaParser().get(filePath));
     }
 
     @Test
@@ -37,7 +59,7 @@ public class CoberturaParserTest {
         String filePath = CoberturaParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura-with-single-quotes.xml").getFile();
 
-        Assert.assertEquals(new ReportData(32, 36), new CoberturaParser().get(filePath));
+        Assert.assertEquals(new ReportData(32, 36), coverage(new CoberturaParser().get(filePath)));
     }
 
     @Test
@@ -45,7 +67,7 @@ public class CoberturaParserTest {
         String filePath = CoberturaParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura-zero-coverage.xml").getFile();
 
-        Assert.assertEquals(new ReportData(32, 36), new CoberturaParser().get(filePath));
+        Assert.assertEquals(new ReportData(32, 36), coverage(new CoberturaParser().get(filePath)));
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -53,7 +75,7 @@ public class CoberturaParserTest {
         String filePath = CoberturaParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura-zero-branch-rate.xml").getFile();
 
-        Assert.assertEquals(new ReportData(32, 36), new CoberturaParser().get(filePath));
+        Assert.assertEquals(new ReportData(32, 36), coverage(new CoberturaParser().get(filePath)));
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -61,7 +83,43 @@ public class CoberturaParserTest {
         String filePath = CoberturaParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura-zero-line-rate.xml").getFile();
 
-        Assert.assertEquals(new ReportData(0, 0), new CoberturaParser().get(filePath));
+        Assert.assertEquals(new ReportData(0, 0), coverage(new CoberturaParser().get(filePath)));
+    }
+
+    @Test
+    public void extractCoverageWhenRootElementIsNotInHead() throws IOException {
+        String filePath = CoberturaParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura-long-prolog.xml").getFile();
+
+        Assert.assertEquals(new ReportData(32, 36), coverage(new CoberturaParser().get(filePath)));
+    }
+
+    @Test
+    public void extractLineCounterSameAsCoverage() throws IOException {
+        for (String report : new String[]{"cobertura-with-single-quotes.xml", "cobertura-zero-coverage.xml", "cobertura-long-prolog.xml"}) {
+            String filePath = CoberturaParserTest.class.getResource(
+                    "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/" + report).getFile();
+
+            Assert.assertEquals(report, new ReportData(32, 36), new CoberturaParser().get(filePath).getCounter(CoverageCounter.LINE));
+        }
+    }
+
+    @Test
+    public void releaseFileHandlesAfterParsing() throws IOException {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        Assume.assumeTrue(os instanceof UnixOperatingSystemMXBean);
+        final UnixOperatingSystemMXBean unixOs = (UnixOperatingSystemMXBean) os;
+
+        String filePath = CoberturaParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura.xml").getFile();
+        String longPrologFilePath = CoberturaParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura-long-prolog.xml").getFile();
+
+        final long openBefore = unixOs.getOpenFileDescriptorCount();
+        for (int i = 0; i < 10000; i++) {
+            new CoberturaParser().get(i % 2 == 0 ? filePath : longPrologFilePath);
+        }
+        Assert.assertTrue(unixOs.getOpenFileDescriptorCount() - openBefore < 100);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -49,13 +49,6 @@ public class CompareCoverageActionTest {
     private SettingsRepository settingsRepository = mock(SettingsRepository.class);
     private PullRequestRepository pullRequestRepository = mock(PullRequestRepository.class);
     private GHRepository ghRepository = mock(GHRepository.class);
-    private GHPullRequestCommitDetail commit = mock(GHPullRequestCommitDetail.class);
-
-    private List<GHPullRequestCommitDetail> commits = new ArrayList<GHPullRequestCommitDetail>() {{
-        add(mock(GHPullRequestCommitDetail.class));
-        add(commit);
-    }};
-    private PagedIterable<GHPullRequestCommitDetail> pagedIterable = mock(PagedIterable.class);
     private List<ReportMetaData> reportMetaDataList = new ArrayList<ReportMetaData>() {{
         add(new ReportMetaData("repo"));
     }};
@@ -117,6 +110,26 @@ public class CompareCoverageActionTest {
         );
     }
 
+    @Test
+    public void postResultAsStatusCheckToHeadOfPullRequestIfBuildDoesNotKnowIt() throws IOException, InterruptedException {
+        prepareBuildSuccess();
+        prepareEnvVars();
+        prepareCoverageData(0f, 0f);
+        when(pullRequestRepository.getHeadSha(ghRepository, 12)).thenReturn("a9b8c7");
+        coverageAction.setPublishResultAs("statusCheck");
+        coverageAction.setReportMetaDataList(reportMetaDataList);
+
+        coverageAction.perform(build, null, null, listener);
+
+        verify(pullRequestRepository).createCommitStatus(
+                ghRepository,
+                "a9b8c7",
+                GHCommitState.SUCCESS,
+                "aaa/job/a",
+                "repo : feature-1 0.0% (0.0%) vs master 0.0%"
+        );
+    }
+
     @Test
     public void postResultAsSuccessfulStatusCheck() throws IOException, InterruptedException {
         prepareBuildSuccess();
@@ -203,10 +216,33 @@ public class CompareCoverageActionTest {
         verify(pullRequestRepository).comment(ghRepository, 12, "[![feature-1 0.0% (0.0%) vs master 0.0%](customJ/coverage-status-icon/?label=repo&branchName=feature-1&coverage=0.0&changeTarget=master&targetCoverage=0.0)](aaa/job/a)");
     }
 
+    @Test
+    public void skipPublishingIfRateLimitExceededDuringPullRequestDiscovery() throws IOException, InterruptedException {
+        prepareBuildSuccess();
+        prepareEnvVars();
+        prepareCoverageData(0f, 0f);
+        when(envVars.get(PrIdAndUrlUtils.GIT_PR_ID_ENV_PROPERTY)).thenReturn(null);
+        Map<String, String> scmVars = new HashMap<>();
+        scmVars.put(PrIdAndUrlUtils.GIT_URL_PROPERTY, GIT_URL);
+        scmVars.put(PrIdAndUrlUtils.GIT_BRANCH_PROPERTY, BRANCH_NAME_PROPERTY);
+        scmVars.put(PrIdAndUrlUtils.GIT_COMMIT_PROPERTY, "fh3k2l");
+        when(pullRequestRepository.getPullRequestFor(System.out, GIT_URL, BRANCH_NAME_PROPERTY, "fh3k2l"))
+                .thenThrow(new RateLimitTracker.RateLimitExceededException(0, 0));
+        coverageAction.setScmVars(scmVars);
+        coverageAction.setPublishResultAs("comment");
+        coverageAction.setReportMetaDataList(reportMetaDataList);
+
+        coverageAction.perform(build, null, null, listener);
+
+        verify(pullRequestRepository, never()).getGitHubRepository(System.out, GIT_URL);
+        verify(pullRequestRepository, never()).comment(any(GHRepository.class), anyInt(), anyString());
+    }
+
     private void prepareCoverageData(float targetCoverage, float prCoverage) throws IOException, InterruptedException {
         Map<String, ReportData> targetCoverageData = new HashMap<>();
         ReportData targetReportData = mock(ReportData.class);
         when(targetReportData.getRate()).thenReturn(targetCoverage);
+        when(targetReportData.getRate(any(CoverageCounter.class))).thenReturn(targetCoverage);
         targetCoverageData.put("repo", targetReportData);
         when(branchCoverageRepository.get(coverageMetaData)).thenReturn(targetCoverageData);
 
@@ -218,12 +254,8 @@ public class CompareCoverageActionTest {
         initMocks();
     }
 
-    private void prepareCommit() throws IOException {
-        GHPullRequest ghPullRequest = mock(GHPullRequest.class);
-        when(ghRepository.getPullRequest(12)).thenReturn(ghPullRequest);
-        when(ghPullRequest.listCommits()).thenReturn(pagedIterable);
-        when(pagedIterable.asList()).thenReturn(commits);
-        when(commit.getSha()).thenReturn("fh3k2l");
+    private void prepareCommit() {
+        when(envVars.get(PrIdAndUrlUtils.GHPRB_ACTUAL_COMMIT_PROPERTY)).thenReturn("fh3k2l");
     }
 
     private void prepareBuildSuccess() throws IOException, InterruptedException {
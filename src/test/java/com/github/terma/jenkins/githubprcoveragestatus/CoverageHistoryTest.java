@@ -0,0 +1,128 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CoverageHistoryTest {
+
+    @Test
+    public void keepOnlyLastSnapshotsNewestFirst() {
+        CoverageHistory history = new CoverageHistory(3);
+        for (int build = 1; build <= 5; build++) history.add(1000L * build, build, build, 10);
+
+        Assert.assertEquals(3, history.size());
+        Assert.assertEquals(5, history.getBuildNumber(0));
+        Assert.assertEquals(5000L, history.getTimestamp(0));
+        Assert.assertEquals(3, history.getBuildNumber(2));
+        Assert.assertEquals(3, history.getCovered(2));
+        Assert.assertEquals(10, history.getTotal(2));
+    }
+
+    @Test
+    public void keepSnapshotsInOrderOfTimestampWhenAddedOutOfOrder() {
+        CoverageHistory history = new CoverageHistory(3);
+        history.add(1000, 1, 1, 10);
+        history.add(3000, 3, 3, 10);
+        history.add(2000, 2, 2, 10);
+
+        Assert.assertEquals(3, history.getBuildNumber(0));
+        Assert.assertEquals(2, history.getBuildNumber(1));
+        Assert.assertEquals(1, history.getBuildNumber(2));
+
+        // full history drops the oldest one
+        history.add(2500, 4, 4, 10);
+        Assert.assertEquals(3, history.size());
+        Assert.assertEquals(3, history.getBuildNumber(0));
+        Assert.assertEquals(4, history.getBuildNumber(1));
+        Assert.assertEquals(2, history.getBuildNumber(2));
+
+        // older than all kept ones
+        history.add(500, 5, 5, 10);
+        Assert.assertEquals(2, history.getBuildNumber(2));
+    }
+
+    @Test
+    public void minMaxAndMovingAverageOverWindow() {
+        CoverageHistory history = new CoverageHistory(10);
+        history.add(1, 1, 9, 10);
+        history.add(2, 2, 5, 10);
+        history.add(3, 3, 7, 10);
+        history.add(4, 4, 6, 10);
+
+        Assert.assertEquals(0.6f, history.getMinRate(2), 0.0001);
+        Assert.assertEquals(0.7f, history.getMaxRate(2), 0.0001);
+        Assert.assertEquals(0.65f, history.getAverageRate(2), 0.0001);
+        // window bigger than history takes all snapshots
+        Assert.assertEquals(0.5f, history.getMinRate(100), 0.0001);
+        Assert.assertEquals(0.9f, history.getMaxRate(100), 0.0001);
+        Assert.assertEquals(0.675f, history.getAverageRate(100), 0.0001);
+    }
+
+    @Test
+    public void noRatesForEmptyHistory() {
+        CoverageHistory history = new CoverageHistory(3);
+
+        Assert.assertTrue(Float.isNaN(history.getAverageRate(3)));
+        Assert.assertTrue(Float.isNaN(history.getMinRate(3)));
+        Assert.assertTrue(Float.isNaN(history.getMaxRate(3)));
+    }
+
+    @Test
+    public void skipSnapshotsWithoutCodeInRates() {
+        CoverageHistory history = new CoverageHistory(3);
+        history.add(1, 1, 5, 10);
+        history.add(2, 2, 0, 0);
+        history.add(3, 3, 7, 10);
+
+        Assert.assertEquals(0f, history.getRate(1), 0.0001);
+        Assert.assertEquals(0.5f, history.getMinRate(3), 0.0001);
+        Assert.assertEquals(0.7f, history.getMaxRate(3), 0.0001);
+        Assert.assertEquals(0.6f, history.getAverageRate(3), 0.0001);
+
+        history.add(4, 4, 0, 0);
+        // only snapshot in window has no code
+        Assert.assertTrue(Float.isNaN(history.getAverageRate(1)));
+        Assert.assertTrue(Float.isNaN(history.getMinRate(1)));
+        Assert.assertTrue(Float.isNaN(history.getMaxRate(1)));
+    }
+
+    @Test
+    public void copyIsNotChangedByLaterSnapshots() {
+        CoverageHistory history = new CoverageHistory(3);
+        history.add(1, 1, 1, 2);
+        CoverageHistory copy = history.copy();
+        history.add(2, 2, 2, 2);
+
+        Assert.assertEquals(1, copy.size());
+        Assert.assertEquals(0.5f, copy.getRate(0), 0.0001);
+    }
+
+    @Test
+    public void takeCounterOfSnapshotsRecordedWithOtherMainCounter() {
+        CoverageHistory history = new CoverageHistory(3);
+        ReportData instruction = new ReportData(2, 10);
+        instruction.setCounter(CoverageCounter.INSTRUCTION, 2, 10);
+        instruction.setCounter(CoverageCounter.LINE, 6, 10);
+        history.add(1, 1, instruction);
+        ReportData line = new ReportData(8, 10);
+        line.setCounter(CoverageCounter.LINE, 8, 10);
+        history.add(2, 2, line);
+
+        CoverageHistory lines = history.forCounter(CoverageCounter.LINE);
+        Assert.assertEquals(2, lines.size());
+        Assert.assertEquals(0.7f, lines.getAverageRate(3), 0.0001);
+        // snapshot without counter is skipped
+        CoverageHistory instructions = history.forCounter(CoverageCounter.INSTRUCTION);
+        Assert.assertEquals(1, instructions.size());
+        Assert.assertEquals(1, instructions.getBuildNumber(0));
+        Assert.assertEquals(0.2f, instructions.getAverageRate(3), 0.0001);
+        // no snapshot has counter
+        Assert.assertEquals(0.5f, history.forCounter(CoverageCounter.METHOD).getAverageRate(3), 0.0001);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void failOnSnapshotOutOfHistory() {
+        new CoverageHistory(3).getRate(0);
+    }
+
+}
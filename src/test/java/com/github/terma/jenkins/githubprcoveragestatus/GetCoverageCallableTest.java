@@ -0,0 +1,201 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import hudson.util.StreamTaskListener;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class GetCoverageCallableTest {
+
+    private static final int MODULES = 40;
+
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    private List<ReportMetaData> reportMetaDataList = new ArrayList<ReportMetaData>() {{
+        add(new ReportMetaData("backend", "module", null));
+        add(new ReportMetaData("frontend", "web", null));
+    }};
+
+    private static void copyReport(String resource, File target) throws IOException {
+        target.getParentFile().mkdirs();
+        Files.copy(Paths.get(GetCoverageCallableTest.class.getResource(resource).getFile()), target.toPath());
+    }
+
+    @Before
+    public void prepareWorkspace() throws IOException {
+        for (int i = 0; i < MODULES; i++) {
+            copyReport("/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml",
+                    new File(workspace.getRoot(), "module-" + i + "/target/site/jacoco/jacoco.xml"));
+            copyReport("/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura.xml",
+                    new File(workspace.getRoot(), "web-" + i + "/coverage/cobertura.xml"));
+        }
+    }
+
+    private Map<String, ReportData> getCoverage(int parserThreads) throws IOException {
+        GetCoverageCallable callable = new GetCoverageCallable(false, "LINE", reportMetaDataList);
+        callable.setParserThreads(parserThreads);
+        return callable.invoke(workspace.getRoot(), null);
+    }
+
+    private Map<String, ReportData> getCoverage(String reportPaths, String reportManifest) throws IOException {
+        GetCoverageCallable callable = new GetCoverageCallable(false, "LINE", reportMetaDataList);
+        callable.setReportPaths(reportPaths);
+        callable.setReportManifest(reportManifest);
+        return callable.invoke(workspace.getRoot(), null);
+    }
+
+    @Test
+    public void aggregateCoverageByLabel() throws IOException {
+        Map<String, ReportData> coverage = getCoverage(4);
+
+        // modules have same report, so it's aggregated once per label
+        Assert.assertEquals(new ReportData(48, 217), coverage.get("backend").getCounter(CoverageCounter.LINE));
+        Assert.assertEquals(new ReportData(32, 36), coverage.get("frontend").getCounter(CoverageCounter.LINE));
+        Assert.assertEquals(new ReportData(48 + 32, 217 + 36), coverage.get("repo").getCounter(CoverageCounter.LINE));
+    }
+
+    @Test
+    public void parallelParsingGivesSameCoverageAsSerial() throws IOException {
+        Map<String, ReportData> serial = getCoverage(1);
+
+        Assert.assertEquals(serial, getCoverage(8));
+        Assert.assertEquals(serial, getCoverage(0));
+    }
+
+    @Test
+    public void reportParsingErrorFromWorkerFailsCollection() throws IOException {
+        File brokenReport = new File(workspace.getRoot(), "module-0/target/site/jacoco/jacoco.xml");
+        Files.write(brokenReport.toPath(), "<report></report>".getBytes("UTF-8"));
+
+        try {
+            getCoverage(8);
+            Assert.fail("Where is my exception?");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Strange Jacoco report!"));
+        }
+    }
+
+    @Test
+    public void takeReportsFromManifestWithoutScan() throws IOException {
+        File modules = new File(workspace.getRoot(), "module-x");
+        copyReport("/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml",
+                new File(modules, "not-standard-name.xml"));
+        Files.write(new File(workspace.getRoot(), "coverage-reports.txt").toPath(), (
+                "# written by build\n" +
+                "\n" +
+                "module-x/not-standard-name.xml\n" +
+                new File(workspace.getRoot(), "web-0/coverage/cobertura.xml").getAbsolutePath() + "\n"
+        ).getBytes("UTF-8"));
+
+        Map<String, ReportData> coverage = getCoverage("module-1/target/site/jacoco/jacoco.xml", "coverage-reports.txt");
+
+        Assert.assertEquals(new ReportData(48, 217), coverage.get("backend").getCounter(CoverageCounter.LINE));
+        Assert.assertEquals(new ReportData(32, 36), coverage.get("frontend").getCounter(CoverageCounter.LINE));
+        Assert.assertEquals(new ReportData(48 + 32, 217 + 36), coverage.get("repo").getCounter(CoverageCounter.LINE));
+    }
+
+    @Test
+    public void takeExplicitReportPathsIfNoManifest() throws IOException {
+        Map<String, ReportData> coverage = getCoverage(
+                "module-1/target/site/jacoco/jacoco.xml,\n module-2/target/site/jacoco/jacoco.xml", "missing.txt");
+
+        // both listed reports are same
+        Assert.assertEquals(new ReportData(48, 217), coverage.get("repo").getCounter(CoverageCounter.LINE));
+        Assert.assertEquals(new ReportData(), coverage.get("frontend"));
+    }
+
+    @Test
+    public void takeFormatOfListedReportFromRootElement() throws IOException {
+        copyReport("/com/github/terma/jenkins/githubprcoveragestatus/CoberturaParserTest/cobertura.xml",
+                new File(workspace.getRoot(), "web-x/coverage-report.xml"));
+        copyReport("/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml",
+                new File(workspace.getRoot(), "module-x/coverage-report.xml"));
+
+        Map<String, ReportData> coverage = getCoverage("web-x/coverage-report.xml,module-x/coverage-report.xml", null);
+
+        Assert.assertEquals(new ReportData(32, 36), coverage.get("frontend").getCounter(CoverageCounter.LINE));
+        Assert.assertEquals(new ReportData(48, 217), coverage.get("backend").getCounter(CoverageCounter.LINE));
+    }
+
+    @Test
+    public void failIfListedReportDoesNotExist() throws IOException {
+        try {
+            getCoverage("module-1/target/site/jacoco/jacoco.xml,module-100/jacoco.xml", null);
+            Assert.fail("Where is my exception?");
+        } catch (IOException e) {
+            Assert.assertEquals("Coverage report module-100/jacoco.xml from report paths doesn't exist", e.getMessage());
+        }
+    }
+
+    @Test
+    public void reuseCachedResultsOfNotChangedReports() throws IOException {
+        GetCoverageCallable callable = new GetCoverageCallable(false, "LINE", reportMetaDataList);
+        callable.setReportCache(true);
+        callable.invoke(workspace.getRoot(), null);
+
+        // same size and modification time, so cached result is taken without parsing
+        File report = new File(workspace.getRoot(), "module-0/target/site/jacoco/jacoco.xml");
+        long lastModified = report.lastModified();
+        byte[] content = Files.readAllBytes(report.toPath());
+        Arrays.fill(content, (byte) ' ');
+        Files.write(report.toPath(), content);
+        report.setLastModified(lastModified);
+
+        ByteArrayOutputStream buildLog = new ByteArrayOutputStream();
+        callable.setListener(new StreamTaskListener(buildLog));
+
+        // changed report isn't same as other modules any more, but is taken from cache instead of failed parsing
+        Assert.assertEquals(new ReportData(48 * 2, 217 * 2),
+                callable.invoke(workspace.getRoot(), null).get("backend").getCounter(CoverageCounter.LINE));
+        Assert.assertTrue(buildLog.toString(), buildLog.toString().matches("(?s).*Report parse cache: [1-9]\\d* hits, \\d+ misses.*"));
+    }
+
+    @Test
+    public void parseAndAggregateSameReportOnlyOnce() throws IOException {
+        Map<String, ReportData> coverage = getCoverage(4);
+        File report = new File(workspace.getRoot(), "module-1/target/site/jacoco/jacoco.xml");
+        File copy = new File(workspace.getRoot(), "module-1/build/reports/jacoco.xml");
+        File archivedCopy = new File(workspace.getRoot(), "archive/jacoco.xml");
+        copy.getParentFile().mkdirs();
+        archivedCopy.getParentFile().mkdirs();
+        Files.copy(report.toPath(), copy.toPath());
+        Files.copy(report.toPath(), archivedCopy.toPath());
+
+        ByteArrayOutputStream buildLog = new ByteArrayOutputStream();
+        GetCoverageCallable callable = new GetCoverageCallable(false, "LINE", reportMetaDataList);
+        callable.setListener(new StreamTaskListener(buildLog));
+
+        Assert.assertEquals(coverage, callable.invoke(workspace.getRoot(), null));
+        Assert.assertTrue(buildLog.toString(), buildLog.toString().contains("Skip duplicate coverage report "
+                + copy.getAbsolutePath() + ", same as "));
+        Assert.assertTrue(buildLog.toString(), buildLog.toString().contains("Skip duplicate coverage report "
+                + archivedCopy.getAbsolutePath() + ", same as "));
+    }
+
+    @Test
+    public void keepSameReportForEachLabelAndAddToRepoOnce() throws IOException {
+        Map<String, ReportData> coverage = getCoverage(4);
+        copyReport("/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml",
+                new File(workspace.getRoot(), "web-0/coverage/jacoco.xml"));
+
+        Map<String, ReportData> withCopy = getCoverage(4);
+
+        Assert.assertEquals(coverage.get("backend"), withCopy.get("backend"));
+        Assert.assertEquals(new ReportData(32 + 48, 36 + 217), withCopy.get("frontend").getCounter(CoverageCounter.LINE));
+        Assert.assertEquals(coverage.get("repo"), withCopy.get("repo"));
+    }
+
+}
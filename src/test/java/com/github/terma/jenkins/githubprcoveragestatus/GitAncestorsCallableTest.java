@@ -0,0 +1,83 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class GitAncestorsCallableTest {
+
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    private String git(String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.addAll(Arrays.asList("git", "-c", "user.name=test", "-c", "user.email=test@test", "-c", "commit.gpgsign=false"));
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).directory(workspace.getRoot()).redirectErrorStream(true).start();
+        String output;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"))) {
+            output = reader.readLine();
+            while (reader.readLine() != null) ;
+        }
+        Assert.assertEquals(0, process.waitFor());
+        return output;
+    }
+
+    private String commit(String message) throws IOException, InterruptedException {
+        Files.write(new File(workspace.getRoot(), "file.txt").toPath(), message.getBytes("UTF-8"));
+        git("add", "file.txt");
+        git("commit", "-q", "-m", message);
+        return git("rev-parse", "HEAD");
+    }
+
+    private boolean gitInstalled() {
+        try {
+            git("init", "-q");
+            git("checkout", "-q", "-b", "master");
+            return true;
+        } catch (IOException | InterruptedException | AssertionError e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void findMergeBaseAndItsAncestors() throws Exception {
+        Assume.assumeTrue(gitInstalled());
+        String first = commit("first");
+        String second = commit("second");
+        git("checkout", "-q", "-b", "feature");
+        commit("feature");
+        git("checkout", "-q", "master");
+        commit("third");
+        git("checkout", "-q", "feature");
+
+        Assert.assertEquals(Arrays.asList(second, first), new GitAncestorsCallable("master", 10).invoke(workspace.getRoot(), null));
+        Assert.assertEquals(Collections.singletonList(second), new GitAncestorsCallable("master", 1).invoke(workspace.getRoot(), null));
+    }
+
+    @Test
+    public void noAncestorsIfTargetBranchIsUnknown() throws Exception {
+        Assume.assumeTrue(gitInstalled());
+        commit("first");
+
+        Assert.assertEquals(Collections.emptyList(), new GitAncestorsCallable("develop", 10).invoke(workspace.getRoot(), null));
+    }
+
+    @Test
+    public void noAncestorsIfWorkspaceIsNotGitRepository() throws Exception {
+        Assert.assertEquals(Collections.emptyList(), new GitAncestorsCallable("master", 10).invoke(workspace.getRoot(), null));
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.*;
+
+public class GitHubClientCacheTest {
+
+    @Test
+    public void clientKeyDoesNotContainToken() {
+        String key = GitHubClientCache.getClientKey("https://ghe.local/api/v3", "secret-token");
+
+        Assert.assertTrue(key.startsWith("https://ghe.local/api/v3|"));
+        Assert.assertFalse(key.contains("secret-token"));
+    }
+
+    @Test
+    public void clientKeyDependsOnApiUrlAndToken() {
+        Assert.assertEquals(
+                GitHubClientCache.getClientKey(null, "a"),
+                GitHubClientCache.getClientKey(null, "a"));
+        Assert.assertFalse(GitHubClientCache.getClientKey(null, "a")
+                .equals(GitHubClientCache.getClientKey(null, "b")));
+        Assert.assertFalse(GitHubClientCache.getClientKey(null, "a")
+                .equals(GitHubClientCache.getClientKey("https://ghe.local/api/v3", "a")));
+        Assert.assertEquals("https://api.github.com|anonymous", GitHubClientCache.getClientKey(null, null));
+    }
+
+    @Test
+    public void reuseRepositoryUntilTtl() throws IOException {
+        GitHub gitHub = mock(GitHub.class);
+        GHRepository first = mock(GHRepository.class);
+        GHRepository second = mock(GHRepository.class);
+        when(gitHub.getRepository("terma/test")).thenReturn(first, second);
+        AtomicLong clock = new AtomicLong(1000);
+        GitHubClientCache.Client client = new GitHubClientCache.Client(gitHub, new RateLimitTracker(clock::get), 100, clock::get);
+
+        Assert.assertSame(first, client.getRepository("terma/test"));
+        clock.set(1099);
+        Assert.assertSame(first, client.getRepository("terma/test"));
+        verify(gitHub, times(1)).getRepository("terma/test");
+
+        clock.set(1100);
+        Assert.assertSame(second, client.getRepository("terma/test"));
+        verify(gitHub, times(2)).getRepository("terma/test");
+    }
+
+}
@@ -0,0 +1,207 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class GitHubRequestSchedulerTest {
+
+    private final AtomicLong clock = new AtomicLong(1000_000L);
+    private final GitHubRequestScheduler scheduler = new GitHubRequestScheduler(clock::get);
+
+    @Test
+    public void runCallAndCountEachRequestOfIt() throws IOException {
+        Assert.assertEquals("ok", scheduler.execute("token", GitHubRequestScheduler.Priority.READ, () -> {
+            scheduler.request("token", () -> null);
+            return scheduler.request("token", () -> "ok");
+        }));
+
+        Assert.assertEquals(1L, scheduler.getStats().get("calls"));
+        Assert.assertEquals(2L, scheduler.getStats().get("requests"));
+        Assert.assertEquals(0, scheduler.getStats().get("running"));
+        Assert.assertEquals(0, scheduler.getStats().get("queued"));
+    }
+
+    @Test
+    public void takeTokenForEachRequestOfCall() throws Exception {
+        // bucket of one request refilled in 10 sec
+        scheduler.setLimits(6, 0);
+        final List<String> order = new CopyOnWriteArrayList<>();
+
+        final Thread comment = new Thread(() -> {
+            try {
+                scheduler.execute("token", GitHubRequestScheduler.Priority.COMMENT, () -> {
+                    scheduler.request("token", () -> order.add("pull request"));
+                    return scheduler.request("token", () -> order.add("comment"));
+                });
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        comment.start();
+        awaitQueued(1);
+        Assert.assertEquals("[pull request]", order.toString());
+
+        clock.addAndGet(10_000L);
+        scheduler.setLimits(6, 0);
+        comment.join(5000);
+
+        Assert.assertEquals("[pull request, comment]", order.toString());
+    }
+
+    @Test
+    public void doNotHoldRequestSlotBetweenRequestsOfCall() throws Exception {
+        scheduler.setLimits(0, 1);
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Thread refresh = new Thread(() -> {
+            try {
+                scheduler.execute("token", GitHubRequestScheduler.Priority.READ, () -> {
+                    // like build waiting for index refreshed by other build
+                    waiting.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return scheduler.request("token", () -> null);
+                });
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        refresh.start();
+        Assert.assertTrue(waiting.await(5, TimeUnit.SECONDS));
+
+        Assert.assertEquals("ok", scheduler.execute("token", GitHubRequestScheduler.Priority.STATUS,
+                () -> scheduler.request("token", () -> "ok")));
+        release.countDown();
+        refresh.join(5000);
+        Assert.assertEquals(2L, scheduler.getStats().get("requests"));
+    }
+
+    @Test
+    public void statusCheckGoesBeforeComment() throws Exception {
+        scheduler.setLimits(0, 1);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> order = new CopyOnWriteArrayList<>();
+
+        final Thread holder = call(GitHubRequestScheduler.Priority.READ, () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return null;
+        }, order, "read");
+        Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+        final Thread comment = call(GitHubRequestScheduler.Priority.COMMENT, () -> null, order, "comment");
+        awaitQueued(1);
+        final Thread status = call(GitHubRequestScheduler.Priority.STATUS, () -> null, order, "status");
+        awaitQueued(2);
+
+        release.countDown();
+        holder.join(5000);
+        comment.join(5000);
+        status.join(5000);
+
+        Assert.assertEquals("[read, status, comment]", order.toString());
+    }
+
+    @Test
+    public void waitForTokenOfBucket() throws Exception {
+        // bucket of one request refilled in 10 sec
+        scheduler.setLimits(6, 0);
+        final List<String> order = new CopyOnWriteArrayList<>();
+        scheduler.request("token", () -> null);
+
+        final Thread second = call(GitHubRequestScheduler.Priority.READ, () -> null, order, "second");
+        awaitQueued(1);
+        Assert.assertTrue(order.isEmpty());
+        // other credential has own bucket
+        scheduler.request("other", () -> null);
+
+        clock.addAndGet(10_000L);
+        scheduler.setLimits(6, 0);
+        second.join(5000);
+
+        Assert.assertEquals("[second]", order.toString());
+        Assert.assertEquals(10_000L, scheduler.getStats().get("maxQueueWaitMillis"));
+    }
+
+    @Test
+    public void retryCallFailedWithRetryAfter() throws IOException {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final String result = scheduler.execute("token", GitHubRequestScheduler.Priority.STATUS, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                scheduler.backoff("token", 0);
+                throw new IOException("secondary rate limit");
+            }
+            return "ok";
+        });
+
+        Assert.assertEquals("ok", result);
+        Assert.assertEquals(2, attempts.get());
+        Assert.assertEquals(1L, scheduler.getStats().get("retries"));
+        Assert.assertEquals(1L, scheduler.getStats().get("backoffs"));
+    }
+
+    @Test
+    public void doNotRetryOtherFailures() {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            scheduler.execute("token", GitHubRequestScheduler.Priority.STATUS, () -> {
+                attempts.incrementAndGet();
+                throw new IOException("not found");
+            });
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("not found", e.getMessage());
+        }
+        Assert.assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void parseRetryAfterSeconds() {
+        Assert.assertEquals(60, GitHubRequestScheduler.parseRetryAfter("60"));
+        Assert.assertEquals(-1, GitHubRequestScheduler.parseRetryAfter(null));
+        Assert.assertEquals(-1, GitHubRequestScheduler.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+
+    private Thread call(GitHubRequestScheduler.Priority priority, GitHubRequestScheduler.Call<Object> call,
+                        List<String> order, String name) {
+        final Thread thread = new Thread(() -> {
+            try {
+                scheduler.execute("token", priority, () -> scheduler.request("token", () -> {
+                    order.add(name);
+                    return call.call();
+                }));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private void awaitQueued(int queued) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!Integer.valueOf(queued).equals(scheduler.getStats().get("queued"))) {
+            if (System.currentTimeMillis() > deadline) Assert.fail("Expected queued " + queued);
+            Thread.sleep(10);
+        }
+    }
+
+}
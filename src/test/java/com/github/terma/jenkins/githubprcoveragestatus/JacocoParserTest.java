@@ -24,12 +24,34 @@ import java.io.IOException;
 
 public class JacocoParserTest {
 
+    /**
+     * Main coverage of report without counters
+     */
+    private static ReportData coverage(ReportData reportData) {
+        return new ReportData(reportData.getCovered(), reportData.getTotal());
+    }
+
     @Test
     public void extractCoverageFromJacocoReport() throws IOException {
         String filePath = JacocoParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml").getFile();
 
-        Assert.assertEquals(new ReportData(48, 217), new JacocoParser("LINE").get(filePath));
+        Assert.assertEquals(new ReportData(48, 217), coverage(new JacocoParser("LINE").get(filePath)));
+    }
+
+    @Test
+    public void extractAllReportCountersInOnePass() throws IOException {
+        String filePath = JacocoParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml").getFile();
+
+        ReportData expected = new ReportData(20, 69);
+        expected.setCounter(CoverageCounter.INSTRUCTION, 243, 960);
+        expected.setCounter(CoverageCounter.BRANCH, 15, 52);
+        expected.setCounter(CoverageCounter.LINE, 48, 217);
+        expected.setCounter(CoverageCounter.COMPLEXITY, 26, 95);
+        expected.setCounter(CoverageCounter.METHOD, 20, 69);
+        expected.setCounter(CoverageCounter.CLASS, 8, 15);
+        Assert.assertEquals(expected, new JacocoParser("METHOD").get(filePath));
     }
 
     @Test
@@ -37,7 +59,7 @@ public class JacocoParserTest {
         String filePath = JacocoParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco-no-code.xml").getFile();
 
-        Assert.assertEquals(new ReportData(), new JacocoParser("LINE").get(filePath));
+        Assert.assertEquals(new ReportData(), coverage(new JacocoParser("LINE").get(filePath)));
     }
 
     @Test
@@ -45,7 +67,7 @@ public class JacocoParserTest {
         String filePath = JacocoParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml").getFile();
 
-        Assert.assertEquals(new ReportData(243, 960), new JacocoParser(null).get(filePath));
+        Assert.assertEquals(new ReportData(243, 960), coverage(new JacocoParser(null).get(filePath)));
     }
 
     @Test
@@ -53,7 +75,46 @@ public class JacocoParserTest {
         String filePath = JacocoParserTest.class.getResource(
                 "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml").getFile();
 
-        Assert.assertEquals(new ReportData(243, 960), new JacocoParser("random").get(filePath));
+        Assert.assertEquals(new ReportData(243, 960), coverage(new JacocoParser("random").get(filePath)));
+    }
+
+    @Test
+    public void extractAllCountersWhenCoverageTypeNullOrUnknown() throws IOException {
+        String filePath = JacocoParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml").getFile();
+
+        for (String counter : new String[]{null, "random"}) {
+            ReportData reportData = new JacocoParser(counter).get(filePath);
+            Assert.assertEquals(new ReportData(243, 960), reportData.getCounter(CoverageCounter.INSTRUCTION));
+            Assert.assertEquals(new ReportData(48, 217), reportData.getCounter(CoverageCounter.LINE));
+        }
+    }
+
+    @Test
+    public void tailSeekAndStreamingGiveSameCoverageForAllCounters() throws IOException {
+        String filePath = JacocoParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco.xml").getFile();
+
+        for (String counter : new String[]{"INSTRUCTION", "LINE", "COMPLEXITY", "METHOD", "CLASS"}) {
+            Assert.assertEquals(counter,
+                    new JacocoParser(counter, false).get(filePath), new JacocoParser(counter, true).get(filePath));
+        }
+    }
+
+    @Test
+    public void fallbackToStreamingWhenTailHasNoTrailingCounters() throws IOException {
+        String filePath = JacocoParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco-comment-in-tail.xml").getFile();
+
+        Assert.assertEquals(new ReportData(3, 4), coverage(new JacocoParser("LINE").get(filePath)));
+    }
+
+    @Test
+    public void extractCountersWhenFallbackToStreaming() throws IOException {
+        String filePath = JacocoParserTest.class.getResource(
+                "/com/github/terma/jenkins/githubprcoveragestatus/JacocoParserTest/jacoco-comment-in-tail.xml").getFile();
+
+        Assert.assertEquals(new ReportData(3, 4), new JacocoParser("LINE").get(filePath).getCounter(CoverageCounter.LINE));
     }
 
     @Test
@@ -69,12 +130,7 @@ public class JacocoParserTest {
             Assert.assertEquals(
                     "Strange Jacoco report!\n" +
                             "File path: FILE_PATH\n" +
-                            "Can't extract float value by XPath: /report/counter[@type='LINE']/@missed\n" +
-                            "from:\n" +
-                            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><!DOCTYPE report PUBLIC \"-//JACOCO//DTD Report 1.0//EN\"\n" +
-                            "        \"report.dtd\">\n" +
-                            "<report name=\"GitHub Pull Request Coverage Status\">\n" +
-                            "</report>",
+                            "Can't extract float value of /report/counter[@type='LINE']/@missed",
                     messageWithoutAbsolutePath);
         }
     }
@@ -92,13 +148,7 @@ public class JacocoParserTest {
             Assert.assertEquals(
                     "Strange Jacoco report!\n" +
                             "File path: FILE_PATH\n" +
-                            "Can't extract float value by XPath: /report/counter[@type='LINE']/@missed\n" +
-                            "from:\n" +
-                            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><!DOCTYPE report PUBLIC \"-//JACOCO//DTD Report 1.0//EN\"\n" +
-                            "        \"report.dtd\">\n" +
-                            "<report name=\"GitHub Pull Request Coverage Status\">\n" +
-                            "    <counter type=\"LINE\" missed=\"X\" covered=\"0\"/>\n" +
-                            "</report>",
+                            "Can't extract float value of /report/counter[@type='LINE']/@missed",
                     messageWithoutAbsolutePath);
         }
     }
@@ -116,13 +166,7 @@ public class JacocoParserTest {
             Assert.assertEquals(
                     "Strange Jacoco report!\n" +
                             "File path: FILE_PATH\n" +
-                            "Can't extract float value by XPath: /report/counter[@type='LINE']/@covered\n" +
-                            "from:\n" +
-                            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><!DOCTYPE report PUBLIC \"-//JACOCO//DTD Report 1.0//EN\"\n" +
-                            "        \"report.dtd\">\n" +
-                            "<report name=\"GitHub Pull Request Coverage Status\">\n" +
-                            "    <counter type=\"LINE\" missed=\"0\" covered=\"X\"/>\n" +
-                            "</report>",
+                            "Can't extract float value of /report/counter[@type='LINE']/@covered",
                     messageWithoutAbsolutePath);
         }
     }
@@ -0,0 +1,95 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class LabelClassifierTest {
+
+    private static final List<String> PATHS = Arrays.asList(
+            "/trunk/webapps/cxstudio-ui/coverage/cobertura.xml",
+            "/trunk/webapps/cxstudio-u/coverage/cobertura.xml",
+            "/trunk/webapps/cxstudio-ui-legacy/coverage/cobertura.xml",
+            "/trunk/webapps/my-cxstudio-ui/coverage/cobertura.xml",
+            "/trunk/webapps/cxstudio_ui/coverage/cobertura.xml",
+            "/trunk/DashboardFrontend/coverage/cobertura.xml",
+            "/trunk/DashboardFrontendX/coverage/cobertura.xml",
+            "/trunk/services/authentication/target/site/jacoco/jacoco.xml",
+            "/trunk/services/billing/target/site/jacoco/jacoco.xml",
+            "/trunk/services/billing-v2/target/site/jacoco/jacoco.xml",
+            "/trunk/services/billingé/target/site/jacoco/jacoco.xml",
+            "/trunk/services/über-billing/target/site/jacoco/jacoco.xml",
+            "C:\\trunk\\services\\billing\\target\\site\\jacoco\\jacoco.xml"
+    );
+
+    private static String classifyByValidate(List<ReportMetaData> reportsMetaData, String path) {
+        String result = null;
+        for (ReportMetaData reportMetaData : reportsMetaData) {
+            if (reportMetaData.validate(path)) {
+                Assert.assertNull("conflict for " + path, result);
+                result = reportMetaData.getLabel();
+            }
+        }
+        return result;
+    }
+
+    private static void assertSameAsValidate(ReportMetaData reportMetaData) throws Exception {
+        List<ReportMetaData> reportsMetaData = Collections.singletonList(reportMetaData);
+        LabelClassifier labelClassifier = new LabelClassifier(reportsMetaData);
+        for (String path : PATHS) {
+            Assert.assertEquals(reportMetaData + " " + path,
+                    classifyByValidate(reportsMetaData, path), labelClassifier.classify(path));
+        }
+    }
+
+    @Test
+    public void sameResultAsValidateForAnyIncludesAndExcludes() throws Exception {
+        assertSameAsValidate(new ReportMetaData("all"));
+        assertSameAsValidate(new ReportMetaData("ui", "cxstudio-ui|DashboardFrontend", null));
+        assertSameAsValidate(new ReportMetaData("ui", "cxstudio-ui|DashboardFrontend", "legacy"));
+        assertSameAsValidate(new ReportMetaData("billing", "billing", null));
+        assertSameAsValidate(new ReportMetaData("billing", "services/billing", null));
+        assertSameAsValidate(new ReportMetaData("billing", "billing.*", null));
+        assertSameAsValidate(new ReportMetaData("java", "jacoco", "authentication|billing-v2"));
+        assertSameAsValidate(new ReportMetaData("not-ui", null, "cxstudio-ui"));
+        assertSameAsValidate(new ReportMetaData("trunk", "/", null));
+
+        ReportMetaData notWordBounded = new ReportMetaData("ui");
+        notWordBounded.setIncludes("cxstudio-u");
+        assertSameAsValidate(notWordBounded);
+    }
+
+    @Test
+    public void routePathToOneOfManyLabels() throws Exception {
+        List<ReportMetaData> reportsMetaData = new ArrayList<>();
+        for (int i = 0; i < 200; i++) reportsMetaData.add(new ReportMetaData("module-" + i, "module-" + i, null));
+        reportsMetaData.add(new ReportMetaData("web", "web[0-9]+", null));
+        LabelClassifier labelClassifier = new LabelClassifier(reportsMetaData);
+
+        Assert.assertEquals("module-17", labelClassifier.classify("/ws/module-17/target/site/jacoco/jacoco.xml"));
+        Assert.assertEquals("module-170", labelClassifier.classify("/ws/module-170/target/site/jacoco/jacoco.xml"));
+        Assert.assertEquals("web", labelClassifier.classify("/ws/web12/coverage/cobertura.xml"));
+        Assert.assertNull(labelClassifier.classify("/ws/module-1000/target/site/jacoco/jacoco.xml"));
+    }
+
+    @Test
+    public void failOnConflictingLabels() {
+        List<ReportMetaData> reportsMetaData = Arrays.asList(
+                new ReportMetaData("frontend", "cxstudio-ui", null),
+                new ReportMetaData("backend", "billing", null),
+                new ReportMetaData("ui", "webapps", null));
+
+        try {
+            new LabelClassifier(reportsMetaData).classify("/trunk/webapps/cxstudio-ui/coverage/cobertura.xml");
+            Assert.fail("Where is my exception?");
+        } catch (Exception e) {
+            Assert.assertEquals("Conflicting labels for coverage path: /trunk/webapps/cxstudio-ui/coverage/cobertura.xml"
+                    + " maps to frontend and ui", e.getMessage());
+        }
+    }
+
+}
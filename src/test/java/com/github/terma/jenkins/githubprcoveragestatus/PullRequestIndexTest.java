@@ -0,0 +1,122 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kohsuke.github.GHCommitPointer;
+import org.kohsuke.github.GHIssueState;
+import org.kohsuke.github.GHPullRequest;
+import org.kohsuke.github.GHRepository;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class PullRequestIndexTest {
+
+    private final AtomicLong clock = new AtomicLong(1000_000L);
+    private final PullRequestIndex index = new PullRequestIndex(clock::get);
+
+    @Test
+    public void findOpenPullRequestByHead() throws IOException {
+        GHPullRequest pr = pr(12, "feature", "sha1", 100, GHIssueState.OPEN);
+        index.rebuild(Arrays.asList(pr, pr(13, "other", "sha2", 200, GHIssueState.OPEN)));
+
+        Assert.assertSame(pr, index.find("feature", "sha1"));
+        Assert.assertNull(index.find("other", "sha1"));
+        Assert.assertNull(index.find("feature", "sha3"));
+        Assert.assertEquals(2, index.size());
+    }
+
+    @Test
+    public void updateNewHeadAndRemoveClosed() throws IOException {
+        index.rebuild(Arrays.asList(
+                pr(12, "feature", "sha1", 100, GHIssueState.OPEN),
+                pr(13, "other", "sha2", 200, GHIssueState.OPEN)));
+
+        GHPullRequest pushed = pr(12, "feature", "sha3", 300, GHIssueState.OPEN);
+        index.update(Arrays.asList(pushed, pr(13, "other", "sha2", 250, GHIssueState.CLOSED)));
+
+        Assert.assertSame(pushed, index.find("feature", "sha3"));
+        Assert.assertNull(index.find("feature", "sha1"));
+        Assert.assertNull(index.find("other", "sha2"));
+        Assert.assertEquals(1, index.size());
+    }
+
+    @Test
+    public void stopUpdateAtFirstNotChangedPullRequest() throws IOException {
+        index.rebuild(Arrays.asList(
+                pr(12, "feature", "sha1", 100, GHIssueState.OPEN),
+                pr(13, "other", "sha2", 200, GHIssueState.OPEN)));
+        final AtomicInteger read = new AtomicInteger();
+
+        index.update(counting(read,
+                pr(14, "new", "sha4", 300, GHIssueState.OPEN),
+                pr(13, "other", "sha2", 200, GHIssueState.OPEN),
+                pr(12, "feature", "sha1", 100, GHIssueState.OPEN),
+                pr(11, "old", "sha0", 50, GHIssueState.OPEN)));
+
+        // pull request updated in same second as last refresh is read again
+        Assert.assertEquals(3, read.get());
+        Assert.assertNotNull(index.find("new", "sha4"));
+        Assert.assertNull(index.find("old", "sha0"));
+    }
+
+    @Test
+    public void doNotReadPullRequestsFoundAfterWaitForIndex() throws IOException {
+        GHPullRequest pr = pr(12, "feature", "sha1", 100, GHIssueState.OPEN);
+        index.rebuild(Collections.singletonList(pr));
+        GHRepository repository = mock(GHRepository.class);
+
+        Assert.assertSame(pr, index.findOrRefresh(repository, "feature", "sha1"));
+        verifyZeroInteractions(repository);
+    }
+
+    @Test
+    public void buildAgainAfterFullRefreshPeriod() throws IOException {
+        Assert.assertTrue(index.isFullRefreshNeeded());
+
+        index.rebuild(Collections.<GHPullRequest>emptyList());
+        Assert.assertFalse(index.isFullRefreshNeeded());
+
+        clock.addAndGet(PullRequestIndex.FULL_REFRESH_MILLIS);
+        Assert.assertTrue(index.isFullRefreshNeeded());
+    }
+
+    private static GHPullRequest pr(int number, String ref, String sha, long updated, GHIssueState state) throws IOException {
+        GHCommitPointer head = mock(GHCommitPointer.class);
+        when(head.getRef()).thenReturn(ref);
+        when(head.getSha()).thenReturn(sha);
+        GHPullRequest pr = mock(GHPullRequest.class);
+        when(pr.getNumber()).thenReturn(number);
+        when(pr.getHead()).thenReturn(head);
+        when(pr.getUpdatedAt()).thenReturn(new Date(updated * 1000));
+        when(pr.getState()).thenReturn(state);
+        return pr;
+    }
+
+    private static Iterable<GHPullRequest> counting(final AtomicInteger read, final GHPullRequest... prs) {
+        return () -> new Iterator<GHPullRequest>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < prs.length;
+            }
+
+            @Override
+            public GHPullRequest next() {
+                read.incrementAndGet();
+                return prs[next++];
+            }
+        };
+    }
+
+}
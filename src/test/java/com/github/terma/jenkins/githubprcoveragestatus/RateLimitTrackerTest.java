@@ -0,0 +1,79 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RateLimitTrackerTest {
+
+    private final AtomicLong clock = new AtomicLong(1000_000L);
+    private final RateLimitTracker tracker = new RateLimitTracker(clock::get);
+    private final PrintStream buildLog = new PrintStream(new ByteArrayOutputStream());
+
+    @Test
+    public void unknownQuotaBeforeFirstResponse() throws IOException {
+        Assert.assertEquals(-1, tracker.getRemaining());
+        Assert.assertEquals(0, tracker.getWaitMillis());
+        tracker.awaitQuota(buildLog, 0);
+    }
+
+    @Test
+    public void takeQuotaFromHeaders() {
+        tracker.update("5000", "4999", "2000");
+
+        Assert.assertEquals(5000, tracker.getLimit());
+        Assert.assertEquals(4999, tracker.getRemaining());
+        Assert.assertEquals(2000_000L, tracker.getResetMillis());
+        Assert.assertEquals(0, tracker.getWaitMillis());
+    }
+
+    @Test
+    public void keepSmallestRemainingOfNewestWindow() {
+        tracker.update("5000", "100", "2000");
+        tracker.update("5000", "120", "2000");
+        Assert.assertEquals(100, tracker.getRemaining());
+
+        // late response of previous window
+        tracker.update("5000", "1", "1500");
+        Assert.assertEquals(100, tracker.getRemaining());
+
+        tracker.update("5000", "4999", "3000");
+        Assert.assertEquals(4999, tracker.getRemaining());
+    }
+
+    @Test
+    public void ignoreResponsesWithoutHeaders() {
+        tracker.update("5000", "100", "2000");
+        tracker.update(null, null, null);
+        tracker.update("5000", "x", "2000");
+
+        Assert.assertEquals(100, tracker.getRemaining());
+    }
+
+    @Test
+    public void waitTillResetWhenQuotaIsLow() {
+        tracker.update("5000", String.valueOf(RateLimitTracker.RESERVE), "1030");
+
+        Assert.assertEquals(30_000L, tracker.getWaitMillis());
+
+        clock.set(1040_000L);
+        Assert.assertEquals(0, tracker.getWaitMillis());
+    }
+
+    @Test
+    public void failWhenResetIsLaterThanMaxWait() throws IOException {
+        tracker.update("5000", "0", "1030");
+
+        try {
+            tracker.awaitQuota(buildLog, 10_000L);
+            Assert.fail();
+        } catch (RateLimitTracker.RateLimitExceededException e) {
+            Assert.assertEquals(1030_000L, e.getResetMillis());
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReportDataTest {
+
+    private static ReportData jacoco(int covered, int total) {
+        ReportData reportData = new ReportData(covered, total);
+        reportData.setCounter(CoverageCounter.INSTRUCTION, covered * 2, total * 2);
+        reportData.setCounter(CoverageCounter.LINE, covered, total);
+        return reportData;
+    }
+
+    @Test
+    public void addSumsMainCoverageAndCounters() {
+        ReportData reportData = new ReportData();
+        reportData.add(jacoco(1, 4));
+        reportData.add(jacoco(2, 4));
+
+        Assert.assertEquals(jacoco(3, 8), reportData);
+    }
+
+    @Test
+    public void keepOnlyCountersPresentInAllAddedReports() {
+        ReportData cobertura = new ReportData(5, 10);
+        cobertura.setCounter(CoverageCounter.LINE, 5, 10);
+        cobertura.setCounter(CoverageCounter.BRANCH, 1, 2);
+
+        ReportData reportData = new ReportData();
+        reportData.add(jacoco(1, 4));
+        reportData.add(cobertura);
+
+        Assert.assertFalse(reportData.hasCounter(CoverageCounter.INSTRUCTION));
+        Assert.assertFalse(reportData.hasCounter(CoverageCounter.BRANCH));
+        Assert.assertEquals(new ReportData(6, 14), reportData.getCounter(CoverageCounter.LINE));
+    }
+
+    @Test
+    public void dropCountersWhenAddReportWithoutCounters() {
+        ReportData reportData = new ReportData();
+        reportData.add(jacoco(1, 4));
+        reportData.add(new ReportData(1, 1));
+
+        Assert.assertEquals(new ReportData(2, 5), reportData);
+    }
+
+    @Test
+    public void keepCountersWhenAddEmptyData() {
+        ReportData reportData = new ReportData();
+        reportData.add(jacoco(1, 4));
+        reportData.add(new ReportData());
+
+        Assert.assertEquals(jacoco(1, 4), reportData);
+    }
+
+    @Test
+    public void rateOfCounterFallbackToMainRateIfNoCounter() {
+        ReportData reportData = jacoco(1, 4);
+
+        Assert.assertEquals(0.25f, reportData.getRate(CoverageCounter.LINE), 0.0001);
+        Assert.assertEquals(0.25f, reportData.getRate(CoverageCounter.CLASS), 0.0001);
+        Assert.assertEquals(0.5f, new ReportData(1, 2).getRate(CoverageCounter.LINE), 0.0001);
+    }
+
+}
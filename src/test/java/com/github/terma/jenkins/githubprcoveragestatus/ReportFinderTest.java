@@ -0,0 +1,120 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class ReportFinderTest {
+
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    private File report(String path) throws IOException {
+        File file = new File(workspace.getRoot(), path);
+        file.getParentFile().mkdirs();
+        file.createNewFile();
+        return file;
+    }
+
+    private boolean symlink(String link, File target) {
+        try {
+            Files.createSymbolicLink(new File(workspace.getRoot(), link).toPath(), target.toPath());
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private List<String> find(String excludes, boolean followSymlinks) throws IOException {
+        List<String> result = new ArrayList<>();
+        for (String path : new ReportFinder(excludes, followSymlinks).find(workspace.getRoot())) {
+            result.add(workspace.getRoot().toPath().relativize(new File(path).toPath()).toString()
+                    .replace(File.separatorChar, '/'));
+        }
+        return result;
+    }
+
+    @Test
+    public void findAllReportTypesInOnePass() throws IOException {
+        report("a/target/site/jacoco/jacoco.xml");
+        report("b/build/reports/jacoco/test/jacocoTestReport.xml");
+        report("c/coverage/cobertura-coverage.xml");
+        report("d/cobertura.xml");
+        report("d/jacoco.xml.bak");
+        report("d/other.xml");
+
+        Assert.assertEquals(Arrays.asList(
+                "a/target/site/jacoco/jacoco.xml",
+                "b/build/reports/jacoco/test/jacocoTestReport.xml",
+                "c/coverage/cobertura-coverage.xml",
+                "d/cobertura.xml"), find(null, true));
+    }
+
+    @Test
+    public void skipDefaultExcludedDirs() throws IOException {
+        report("web/node_modules/lib/coverage/cobertura.xml");
+        report(".git/jacoco.xml");
+        report("web/coverage/cobertura.xml");
+
+        Assert.assertEquals(Arrays.asList("web/coverage/cobertura.xml"), find(null, true));
+    }
+
+    @Test
+    public void skipUserExcludedDirsByNameAndByPath() throws IOException {
+        report("cache-1/jacoco.xml");
+        report("module/cache-2/jacoco.xml");
+        report("web/dist/cobertura.xml");
+        report("app/web/dist/cobertura.xml");
+        report("module/jacoco.xml");
+
+        Assert.assertEquals(Arrays.asList("app/web/dist/cobertura.xml", "module/jacoco.xml"),
+                find("cache-*,\n web/dist/ ", true));
+    }
+
+    @Test
+    public void followSymlinksAndSurviveLoops() throws IOException {
+        File module = report("module/jacoco.xml").getParentFile();
+        Assume.assumeTrue(symlink("linked", module));
+        Assume.assumeTrue(symlink("module/loop", workspace.getRoot()));
+
+        Assert.assertEquals(Arrays.asList("linked/jacoco.xml", "module/jacoco.xml"), find(null, true));
+    }
+
+    @Test
+    public void ignoreSymlinksIfNotFollow() throws IOException {
+        File module = report("module/jacoco.xml").getParentFile();
+        Assume.assumeTrue(symlink("linked", module));
+        Assume.assumeTrue(symlink("cobertura.xml", new File(module, "jacoco.xml")));
+
+        Assert.assertEquals(Arrays.asList("module/jacoco.xml"), find(null, false));
+    }
+
+    @Test
+    public void findDuplicatesBySizeAndContent() throws IOException {
+        File report = report("module/target/site/jacoco/jacoco.xml");
+        File copy = report("module/build/reports/jacoco.xml");
+        File sameSize = report("other/target/site/jacoco/jacoco.xml");
+        File otherSize = report("web/coverage/cobertura.xml");
+        Files.write(report.toPath(), "<report>1</report>".getBytes("UTF-8"));
+        Files.write(copy.toPath(), "<report>1</report>".getBytes("UTF-8"));
+        Files.write(sameSize.toPath(), "<report>2</report>".getBytes("UTF-8"));
+        Files.write(otherSize.toPath(), "<coverage/>".getBytes("UTF-8"));
+
+        Map<String, String> duplicates = ReportFinder.findDuplicates(new ReportFinder(null, true).find(workspace.getRoot()));
+
+        // first path in order is kept
+        Assert.assertEquals(1, duplicates.size());
+        Assert.assertEquals(copy.getAbsolutePath(), duplicates.get(report.getAbsolutePath()));
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.github.terma.jenkins.githubprcoveragestatus;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class ReportParseCacheTest {
+
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    private File cacheFile;
+    private File report;
+    private ReportData reportData;
+
+    @Before
+    public void prepare() throws IOException {
+        cacheFile = new File(workspace.getRoot(), ReportParseCache.FILE_NAME);
+        report = new File(workspace.getRoot(), "jacoco.xml");
+        write(report, "<report>1</report>", 1000000L);
+
+        reportData = new ReportData(1, 4);
+        reportData.setCounter(CoverageCounter.LINE, 1, 4);
+        reportData.setCounter(CoverageCounter.BRANCH, 2, 3);
+    }
+
+    private static void write(File file, String content, long lastModified) throws IOException {
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        Assert.assertTrue(file.setLastModified(lastModified));
+    }
+
+    private ReportParseCache savedCache(boolean verifyHash) {
+        ReportParseCache cache = new ReportParseCache(cacheFile, "LINE", verifyHash);
+        cache.put(report.getPath(), reportData);
+        cache.save();
+        return cache;
+    }
+
+    @Test
+    public void reuseResultOfNotChangedReport() {
+        savedCache(false);
+
+        ReportParseCache cache = new ReportParseCache(cacheFile, "LINE", false).load();
+
+        Assert.assertEquals(reportData, cache.get(report.getPath()));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void missWhenReportSizeOrModificationTimeChanged() throws IOException {
+        savedCache(false);
+
+        write(report, "<report>12</report>", 1000000L);
+        Assert.assertNull(new ReportParseCache(cacheFile, "LINE", false).load().get(report.getPath()));
+
+        write(report, "<report>1</report>", 2000000L);
+        Assert.assertNull(new ReportParseCache(cacheFile, "LINE", false).load().get(report.getPath()));
+    }
+
+    @Test
+    public void missWhenContentChangedWithSameSizeAndTimeIfHashVerified() throws IOException {
+        savedCache(true);
+
+        write(report, "<report>2</report>", 1000000L);
+
+        Assert.assertEquals(reportData, new ReportParseCache(cacheFile, "LINE", false).load().get(report.getPath()));
+        Assert.assertNull(new ReportParseCache(cacheFile, "LINE", true).load().get(report.getPath()));
+    }
+
+    @Test
+    public void dropCacheWhenParserVersionOrCounterTypeChanged() {
+        savedCache(false);
+
+        Assert.assertEquals(0, new ReportParseCache(cacheFile, "INSTRUCTION", false).load().size());
+        Assert.assertEquals(0, new ReportParseCache(cacheFile, ReportParseCache.PARSER_VERSION + 1, "LINE", false, 10).load().size());
+        Assert.assertEquals(1, new ReportParseCache(cacheFile, "LINE", false).load().size());
+    }
+
+    @Test
+    public void keepOnlyLastUsedReports() throws IOException {
+        ReportParseCache cache = new ReportParseCache(cacheFile, ReportParseCache.PARSER_VERSION, "LINE", false, 2);
+        File[] otherReports = new File[2];
+        for (int i = 0; i < otherReports.length; i++) {
+            otherReports[i] = new File(workspace.getRoot(), "jacoco-" + i + ".xml");
+            write(otherReports[i], "<report/>", 1000000L);
+        }
+
+        cache.put(report.getPath(), reportData);
+        cache.put(otherReports[0].getPath(), reportData);
+        cache.get(report.getPath());
+        cache.put(otherReports[1].getPath(), reportData);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(reportData, cache.get(report.getPath()));
+        Assert.assertNull(cache.get(otherReports[0].getPath()));
+    }
+
+    @Test
+    public void startFromEmptyCacheIfFileIsBroken() throws IOException {
+        savedCache(false);
+        byte[] content = Files.readAllBytes(cacheFile.toPath());
+        Files.write(cacheFile.toPath(), Arrays.copyOf(content, content.length - 5));
+
+        ReportParseCache cache = new ReportParseCache(cacheFile, "LINE", false).load();
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertNull(cache.get(report.getPath()));
+    }
+
+}